@@ -1,10 +1,21 @@
 package com.goldberg.games2d;
 
 import com.goldberg.games2d.data.Level;
+import com.goldberg.games2d.data.WorldSnapshot;
 import com.goldberg.games2d.exceptions.GraphicsException;
+import com.goldberg.games2d.gamelogic.InputFrame;
 import com.goldberg.games2d.gamelogic.PredefinedCommand;
 import com.goldberg.games2d.gamelogic.UserInputTriggeredState;
+import com.goldberg.games2d.graphics.DirtyRegionTracker;
+import com.goldberg.games2d.graphics.ParticleSystem;
+import com.goldberg.games2d.graphics.QualityGovernor;
+import com.goldberg.games2d.graphics.RedrawMode;
+import com.goldberg.games2d.hardware.FramePacer;
+import com.goldberg.games2d.hardware.GameClock;
+import com.goldberg.games2d.hardware.ImageImporter;
 import com.goldberg.games2d.hardware.KeyPublisher;
+import com.goldberg.games2d.hardware.RenderBackend;
+import com.goldberg.games2d.hardware.RenderTarget;
 import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
@@ -14,13 +25,13 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.Configurator;
 
-import javax.swing.*;
 import java.awt.*;
-import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.annotation.ElementType.*;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
@@ -31,26 +42,168 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
 @interface GameUserInputHandlerMap {}
 
 /**
- * Initializes and runs the game, including the GUI, sound etc
+ * Initializes and runs the game, including the GUI, sound etc.
+ * The simulation advances in fixed ticks and publishes a {@link WorldSnapshot} of each, the frames are drawn from
+ * the latest snapshot only. See {@link ThreadingMode} for the threads they run on. The loop runs by a
+ * {@link GameClock}, in real time or faster, and may only simulate without drawing at all.
  */
 public class Game {
-    private GraphicsDevice device; // the default screen, need to keep the reference to restore at the end (todo)
+    private final RenderTarget renderTarget;
+    private final ImageImporter importer;
     private Level currentLevel;
+    private boolean partialRedrawSupported = true;
+    private boolean wasPaused = false;
+    private ThreadingMode threading;
+    private final GameClock clock;
+    /**
+     * False if there is nowhere to draw, the loop only simulates
+     */
+    private final boolean drawing;
+    /**
+     * False once the game is quit or drew its last frame, both threads stop then
+     */
+    private volatile boolean running = true;
+    /**
+     * The pause as the last tick left it, for the drawing
+     */
+    private volatile boolean paused;
     private static final Logger logger = LogManager.getLogger();
     private final Map<Integer, UserInputTriggeredState> userInputHandlers;
     private final int PAUSE_KEY;
     private final int EXIT_KEY;
+    /**
+     * Tracks what to repaint in the partial redraw mode, null in the full redraw mode
+     */
+    private final DirtyRegionTracker dirtyRegions;
+    /**
+     * The game stops after drawing that many frames, 0 means it runs until quit
+     */
+    private final long maxFrames;
+    private long framesDrawn;
+    /**
+     * The game stops after running that many ticks, 0 means it runs until quit
+     */
+    private final long maxTicks;
+    /**
+     * The longest the loop sleeps while nothing changes, ms, 0 if it never idles
+     */
+    private final long idleMaxWait;
+    /**
+     * How often the idle loop checks if the screen's contents were lost, ms
+     */
+    private static final long IDLE_CHECK_INTERVAL = 50;
+    /**
+     * A key taken from the queue while idling, processed before the queue in the next step
+     */
+    private int[] pendingKey;
+    /**
+     * The keys of the tick being simulated
+     */
+    private final InputFrame input = new InputFrame();
+    private long idleNanos;
+    // the fewest and the most sprites a frame drew and culled
+    private int fewestDrawnSprites = Integer.MAX_VALUE, mostDrawnSprites;
+    private int fewestCulledSprites = Integer.MAX_VALUE, mostCulledSprites;
+    /**
+     * The game time of the last tick
+     */
+    private long frameGameTime;
+    /**
+     * The simulation's fixed step, ns
+     */
+    private final long tickNanos;
+    /**
+     * The frames per second at most on a display with its own pace, 0 for no cap
+     */
+    private final int frameRateCap;
+    /**
+     * The most ticks run to catch up before a frame is drawn, the rest of the backlog is dropped
+     */
+    private static final int MAX_TICKS_PER_FRAME = 5;
+    /**
+     * The clock's time the simulation has caught up with
+     */
+    private long simulatedUntil;
+    /**
+     * The game time passed in ticks since the loop started, ns
+     */
+    private long gameNanos;
+    /**
+     * The game time the loop started at, ms
+     */
+    private long gameEpoch;
+    /**
+     * The part of gameNanos spent paused: the level's time stands still then
+     */
+    private long pausedNanos;
+    private long ticksRun, ticksSkipped, ticksDropped;
+    private FramePacer pacer;
+    /**
+     * Waits for the ticks on the simulation thread
+     */
+    private FramePacer simulationPacer;
+    /**
+     * The sequence of the last snapshot drawn if it was still, 0 otherwise: the screen shows it as it is
+     */
+    private long settledSequence;
+    /**
+     * True if the last tick run changed nothing, the simulation's side
+     */
+    private boolean lastTickStill;
+    private long lastDrawnAt;
+    /**
+     * True if the last frame didn't make it to the screen and needs to be painted again right away
+     */
+    private boolean repaintNeeded;
+    /**
+     * Trades the drawing's quality for time when the frames take longer than the budget
+     */
+    private final QualityGovernor governor;
+    private final ParticleSystem particles;
+    private Object antialiasing = RenderingHints.VALUE_ANTIALIAS_ON;
+    private boolean interpolating = true;
+    /**
+     * The frame drawn at a lower resolution and scaled up to the screen, null while the resolution is full
+     */
+    private BufferedImage lowResolutionFrame;
 
     @Inject
     public Game(@Named("KeyInputQueue") BlockingQueue<int[]> comingKeys,
                 @GameUserInputHandlerMap Map<Integer, UserInputTriggeredState> handlers,
                 @Named("PAUSE_KEY") String PAUSE_KEY_CODE,
                 @Named("EXIT_KEY") String EXIT_KEY_CODE,
-                @Named("DataDirectoryPath") String dataDirPath) {
+                @Named("DataDirectoryPath") String dataDirPath,
+                @Named("REDRAW_MODE") String redrawMode,
+                @Named("MAX_FRAMES") String maxFrames,
+                @Named("MAX_TICKS") String maxTicks,
+                @Named("IDLE_MAX_WAIT") String idleMaxWait,
+                @Named("TICK_RATE") String tickRate,
+                @Named("FRAME_RATE_CAP") String frameRateCap,
+                @Named("THREADING") String threading,
+                @Named("RENDER_BACKEND") String renderBackend,
+                GameClock clock,
+                RenderTarget renderTarget,
+                ImageImporter importer,
+                QualityGovernor governor,
+                ParticleSystem particles) {
         this.PAUSE_KEY = Integer.parseInt(PAUSE_KEY_CODE);
         this.EXIT_KEY = Integer.parseInt(EXIT_KEY_CODE);
         this.userInputHandlers = handlers;
         this.comingKeys = comingKeys;
+        this.dirtyRegions = (RedrawMode.valueOf(redrawMode.trim()) == RedrawMode.PARTIAL) ?
+                new DirtyRegionTracker() : null;
+        this.maxFrames = Long.parseLong(maxFrames.trim());
+        this.maxTicks = Long.parseLong(maxTicks.trim());
+        this.idleMaxWait = Long.parseLong(idleMaxWait.trim());
+        this.tickNanos = 1_000_000_000L / Math.max(1, Integer.parseInt(tickRate.trim()));
+        this.frameRateCap = Integer.parseInt(frameRateCap.trim());
+        this.threading = ThreadingMode.valueOf(threading.trim());
+        this.drawing = RenderBackend.valueOf(renderBackend.trim()) != RenderBackend.NONE;
+        this.clock = clock;
+        this.renderTarget = renderTarget;
+        this.importer = importer;
+        this.governor = governor;
+        this.particles = particles;
     }
 
     /**
@@ -70,7 +223,7 @@ public class Game {
             game.initGUI();
             game.currentLevel = injector.getInstance(Level.class);
             logger.debug("level loaded");
-            game.device.getFullScreenWindow().addKeyListener(keysSource);
+            game.renderTarget.addKeyListener(keysSource);
             logger.debug("about to go into the gameLoop");
             game.runTheGameLoop();
         }
@@ -84,68 +237,376 @@ public class Game {
     }
 
     private void initGUI(){
-        GraphicsEnvironment environment = GraphicsEnvironment.getLocalGraphicsEnvironment();
-        device = environment.getDefaultScreenDevice();
-        final JFrame frame = new JFrame();
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setUndecorated(true);
-        frame.setIgnoreRepaint(true);
-        frame.setResizable(false);
+        renderTarget.open();
+        if(dirtyRegions != null){
+            // the partial redraw relies on the back buffer still holding a frame we painted before
+            int historyDepth = renderTarget.getBufferHistoryDepth();
+            if(historyDepth > 0){
+                dirtyRegions.setHistoryDepth(historyDepth);
+            } else {
+                logger.info("The render target doesn't keep the buffers' contents, the partial redraw is disabled");
+                partialRedrawSupported = false;
+            }
+        }
+    }
+    
+
+    /**
+     * Drains the keys which came since the last tick into the tick's input
+     */
+    private void processUserInput(){
+        if(pendingKey != null){
+            processKey(pendingKey);
+            pendingKey = null;
+        }
+        int[] message;
+        while((message = comingKeys.poll()) != null){
+            processKey(message);
+        }
+    }
 
-        device.setFullScreenWindow(frame);
+    /**
+     * @return the game time the level's picture changes next by itself, Long.MAX_VALUE if only the input can change
+     * it (e.g. while the game is paused)
+     */
+    private long nextChangeAt(){
+        return paused ? Long.MAX_VALUE : currentLevel.nextChangeAt(frameGameTime);
+    }
 
-        if (device.isDisplayChangeSupported())
-        {
-            // not really clear if we need to do this, but let's set for the first release (todo)
-            DisplayMode displayMode = new DisplayMode(1024, 768, 32, 0);
-            logger.debug("display mode set ok");
-            try {
-                device.setDisplayMode(displayMode);
+    /**
+     * Passes a key to its handler (e.g. the pause) at once, or adds it to the tick's input if it's a movement
+     */
+    private void processKey(int[] message){
+        if(userInputHandlers.containsKey(message[0])){
+            logger.debug("processing key {}",message[0]);
+            userInputHandlers.get(message[0]).processMessage(message);
+        } else if (PredefinedCommand.valueOfKey(message[0])!=null) {
+            input.add(message);
+        }
+    }
+
+    /**
+     * Sleeps while the picture on the screen stays right: until a key comes, the level's next change by itself
+     * (e.g. an animated tile's next frame), the screen loses its contents or idleMaxWait passes, whatever happens
+     * first. Only a display with its own pace idles, the off-screen target draws as fast as it can.
+     * Nothing changes in the ticks slept through, so they are skipped rather than caught up with, the game time
+     * jumps over them. A clock which isn't real time never idles, it has no keys to wait for.
+     */
+    private void idle(){
+        if(idleMaxWait <= 0 || repaintNeeded || !renderTarget.isFrameRateLimited() || !clock.isRealTime()){
+            return;
+        }
+        long wakeAt = Math.min(nextChangeAt(), frameGameTime + idleMaxWait);
+        // the last tick's game time is simulatedUntil on the loop's clock
+        long wakeAtNanos = simulatedUntil + (wakeAt - frameGameTime) * 1_000_000;
+        long idleStarted = clock.nanoTime();
+        try {
+            while(pendingKey == null && !renderTarget.contentsLost()){
+                long wait = (wakeAtNanos - clock.nanoTime()) / 1_000_000;
+                if(wait <= 0){
+                    break;
+                }
+                pendingKey = comingKeys.poll(Math.min(wait, IDLE_CHECK_INTERVAL), TimeUnit.MILLISECONDS);
             }
-            catch (IllegalArgumentException e) {
-                logger.debug("Unable to set display mode we wanted",e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            long idled = clock.nanoTime() - idleStarted;
+            idleNanos += idled;
+            if(skipTicks(idled)){
+                pacer.restart();
             }
-            // fix for mac os x
-            frame.setSize(displayMode.getWidth(), displayMode.getHeight());
         }
-        frame.createBufferStrategy(2);
     }
-    
 
-    private void processUserInput(long currentGameTime){
-        boolean spritesProcessed = false; // for more than 1 sprite, make this an array
-        while(comingKeys.peek()!=null){
-            try {
-                int[] message = comingKeys.take();
-                if(userInputHandlers.containsKey(message[0])){
-                    logger.debug("processing key {}",message[0]);
-                    userInputHandlers.get(message[0]).processMessage(message);
-                } else if (PredefinedCommand.valueOfKey(message[0])!=null) {
-                    currentLevel.processMessage(message,currentGameTime);
-                    spritesProcessed = true;
+    /**
+     * The simulation thread's idling in {@link ThreadingMode#SPLIT}: after a tick which changed nothing, sleeps
+     * until a key comes or the level's next change by itself, the drawing has the last snapshot already. Like
+     * {@link #idle()}, only with a display with its own pace, and the ticks slept through are skipped.
+     */
+    private void idleSimulation(){
+        if(idleMaxWait <= 0 || !renderTarget.isFrameRateLimited() || pendingKey != null){
+            return;
+        }
+        long wakeAt = nextChangeAt();
+        long idleStarted = clock.nanoTime();
+        try {
+            if(wakeAt == Long.MAX_VALUE){
+                pendingKey = comingKeys.take();
+            } else {
+                long wait = simulatedUntil + (wakeAt - frameGameTime) * 1_000_000 - idleStarted;
+                if(wait > 0){
+                    pendingKey = comingKeys.poll(wait, TimeUnit.NANOSECONDS);
                 }
-            } catch (InterruptedException ie){
-                logger.error("Take from non-empty communication queue got interrupted. Shouldn't be happening",ie);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            skipTicks(clock.nanoTime() - idleStarted);
         }
-        if(!spritesProcessed){
-            // for more than 1 sprite, make this a loop
-            currentLevel.processGameTick(currentGameTime);
+    }
+
+    /**
+     * Jumps the game time over the ticks idled through, nothing changed in them
+     * @param idled how long the loop idled, ns
+     * @return true if any tick was skipped
+     */
+    private boolean skipTicks(long idled){
+        long skipped = idled / tickNanos;
+        if(skipped <= 0){
+            return false;
         }
+        ticksSkipped += skipped;
+        simulatedUntil += skipped * tickNanos;
+        gameNanos += skipped * tickNanos;
+        if(paused){
+            pausedNanos += skipped * tickNanos;
+        }
+        return true;
+    }
+
+    /**
+     * Runs the ticks due by now, at most MAX_TICKS_PER_FRAME of them: when the simulation falls further behind, the
+     * rest of the backlog is dropped and the game slows down instead of spiralling. A clock which isn't real time
+     * waits for the simulation, nothing is dropped then. Publishes the last of the ticks.
+     */
+    private void runTicks(){
+        long now = clock.nanoTime();
+        int ticks = 0;
+        while(running && now - simulatedUntil >= tickNanos){
+            if(ticks == MAX_TICKS_PER_FRAME && clock.isRealTime()){
+                long backlog = (now - simulatedUntil) / tickNanos;
+                ticksDropped += backlog;
+                simulatedUntil += backlog * tickNanos;
+                break;
+            }
+            simulatedUntil += tickNanos;
+            gameNanos += tickNanos;
+            tick();
+            ticks++;
+        }
+        if(ticks > 0){
+            lastTickStill = currentLevel.publish(simulatedUntil);
+        }
+    }
+
+    /**
+     * @return how far a frame drawn now is from the snapshot's previous tick to its tick, 0 to 1
+     */
+    private float alpha(WorldSnapshot snapshot){
+        if(!interpolating){
+            return 1;
+        }
+        return Math.max(0, Math.min((clock.nanoTime() - snapshot.getSimulatedAt()) / (float) tickNanos, 1));
+    }
+
+    /**
+     * Advances the simulation by one fixed step: the input which came since the last tick, the sprites, the tiles
+     * and the particles. A paused game only handles the keys, its level's time stands still.
+     */
+    private void tick(){
+        processUserInput();
+        paused = userInputHandlers.get(PAUSE_KEY).isActive();
+        if(userInputHandlers.get(EXIT_KEY).isActive()){
+            running = false;
+        }
+        if(paused){
+            pausedNanos += tickNanos;
+        }
+        frameGameTime = gameEpoch + (gameNanos - pausedNanos) / 1_000_000;
+        currentLevel.startTick(frameGameTime);
+        if(!paused){
+            currentLevel.processTick(input, frameGameTime);
+        }
+        input.endTick();
+        ticksRun++;
+        if(maxTicks > 0 && ticksRun >= maxTicks){
+            running = false;
+        }
+    }
+
+    /**
+     * The simulation thread of {@link ThreadingMode#SPLIT}: runs the ticks as they come due, whatever the drawing
+     * does, and sleeps while nothing changes
+     */
+    private void simulate(){
+        try {
+            while(running){
+                runTicks();
+                if(lastTickStill){
+                    idleSimulation();
+                }
+                simulationPacer.waitUntil(simulatedUntil + tickNanos);
+            }
+        } catch (Throwable t) {
+            logger.error("The simulation failed", t);
+            running = false;
+        }
+    }
+
+    /**
+     * The drawing loop of {@link ThreadingMode#SPLIT}: draws the latest snapshot, unless the screen already shows
+     * it as it is; then it sleeps until the simulation publishes the next one, checking the screen's contents every
+     * IDLE_CHECK_INTERVAL
+     */
+    private void draw(){
+        Thread simulation = new Thread(this::simulate, "simulation");
+        simulation.setDaemon(true);
+        simulationPacer = new FramePacer(clock, tickNanos);
+        simulation.start();
+        try {
+            do {
+                WorldSnapshot snapshot = currentLevel.latestSnapshot();
+                if(snapshot == null || isSettled(snapshot)){
+                    long idleStarted = clock.nanoTime();
+                    long wait = IDLE_CHECK_INTERVAL * 1_000_000;
+                    if(snapshot != null){
+                        // the settled screen is drawn again after idleMaxWait anyway
+                        wait = Math.min(wait, lastDrawnAt + idleMaxWait * 1_000_000 - idleStarted);
+                    }
+                    currentLevel.awaitSnapshot(wait);
+                    idleNanos += clock.nanoTime() - idleStarted;
+                    pacer.restart();
+                    continue;
+                }
+                drawFrame(snapshot);
+                settledSequence = (snapshot.isStill() && !repaintNeeded) ? snapshot.getSequence() : 0;
+                lastDrawnAt = clock.nanoTime();
+                framesDrawn++;
+                pacer.endFrame();
+            } while (running && (maxFrames == 0 || framesDrawn < maxFrames));
+        } finally {
+            running = false;
+            // it may be waiting for a key
+            simulation.interrupt();
+            try {
+                simulation.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return true if the screen shows the snapshot as it is: nothing changed since the last frame drawn, which was
+     * still. Only a display with its own pace skips the frames, and not for longer than idleMaxWait.
+     */
+    private boolean isSettled(WorldSnapshot snapshot){
+        return idleMaxWait > 0 && renderTarget.isFrameRateLimited() && settledSequence > 0
+                && snapshot.getLastChange() <= settledSequence && paused == wasPaused
+                && clock.nanoTime() - lastDrawnAt < idleMaxWait * 1_000_000 && !renderTarget.contentsLost();
     }
    
     /**
      * executes the game loop - i.e. a sequence of game steps with post-processing.
      */
     private void runTheGameLoop(){
-        UserInputTriggeredState quit = userInputHandlers.get(EXIT_KEY);
-        UserInputTriggeredState pause = userInputHandlers.get(PAUSE_KEY);
+        if(threading == ThreadingMode.SPLIT && (!drawing || !clock.isRealTime())){
+            // nothing to draw in parallel with, or a clock only the loop moves: the ticks must follow the frames
+            logger.info("The game runs on one thread with this clock and render target");
+            threading = ThreadingMode.SINGLE;
+        }
+        // only the real time has a display's pace to keep, the other clocks don't wait for the frames
+        pacer = FramePacer.forFrameRate(clock,
+                renderTarget.isFrameRateLimited() && clock.isRealTime() ? frameRateCap : 0);
+        long loopStarted = System.nanoTime();
+        gameEpoch = clock.currentTimeMillis();
+        // one tick is due right away, there is nothing to draw before it
+        simulatedUntil = clock.nanoTime() - tickNanos;
         try {
-            do {
-                gameStep(pause);
-            } while (!quit.isActive());
+            if(threading == ThreadingMode.SPLIT){
+                draw();
+            } else {
+                do {
+                    runTicks();
+                    if(drawing){
+                        drawFrame(currentLevel.latestSnapshot());
+                        framesDrawn++;
+                        idle();
+                        pacer.endFrame();
+                        clock.frameEnded(simulatedUntil + tickNanos);
+                    } else {
+                        clock.waitUntil(simulatedUntil + tickNanos);
+                    }
+                } while (running && (maxFrames == 0 || framesDrawn < maxFrames));
+            }
         }finally {
-            closeGui();
+            double seconds = (System.nanoTime() - loopStarted) / 1e9;
+            logger.info("drew {} frames in {} s, {} frames per second", framesDrawn, String.format("%.2f", seconds),
+                    String.format("%.1f", framesDrawn / seconds));
+            logger.info("ran {} ticks, {} per second, {} skipped while idle and {} dropped behind",
+                    ticksRun, String.format("%.1f", ticksRun / seconds), ticksSkipped, ticksDropped);
+            logger.info("simulated {} s of game time, {} times real time", String.format("%.2f", gameNanos / 1e9),
+                    String.format("%.1f", gameNanos / 1e9 / seconds));
+            logger.info("frame time {} ms on average, variance {} ms2, longest {} ms",
+                    String.format("%.3f", pacer.getMeanFrameMillis()),
+                    String.format("%.4f", pacer.getFrameVarianceMillis()),
+                    String.format("%.3f", pacer.getLongestFrameMillis()));
+            if(frameRateCap > 0 && renderTarget.isFrameRateLimited() && clock.isRealTime()){
+                logger.info("frames woke {} us after the deadline on average, {} us at most, {} deadlines missed",
+                        String.format("%.1f", pacer.getMeanLatenessMicros()),
+                        String.format("%.1f", pacer.getLongestLatenessMicros()), pacer.getMissedDeadlines());
+            }
+            if(simulationPacer != null){
+                logger.info("ticks woke {} us after the deadline on average, {} us at most",
+                        String.format("%.1f", simulationPacer.getMeanLatenessMicros()),
+                        String.format("%.1f", simulationPacer.getLongestLatenessMicros()));
+            }
+            logger.info("{} accelerated and {} unaccelerated image blits", importer.getAcceleratedBlits(),
+                    importer.getUnacceleratedBlits());
+            logger.info("{} sprites drawn and {} culled", currentLevel.getTotalDrawnSprites(),
+                    currentLevel.getTotalCulledSprites());
+            if(framesDrawn > 0){
+                logger.info("sprites drawn per frame {}/{}/{} and culled {}/{}/{} (min/avg/max)",
+                        fewestDrawnSprites,
+                        String.format("%.1f", currentLevel.getTotalDrawnSprites() / (double) framesDrawn),
+                        mostDrawnSprites, fewestCulledSprites,
+                        String.format("%.1f", currentLevel.getTotalCulledSprites() / (double) framesDrawn),
+                        mostCulledSprites);
+            }
+            logger.info("idled {} s", String.format("%.2f", idleNanos / 1e9));
+            logger.info("quality went down {} and up {} times, ended at {}", governor.getStepsDown(),
+                    governor.getStepsUp(), governor);
+            renderTarget.close();
+        }
+    }
+
+    /**
+     * Draws a frame of the snapshot and lets the governor know how long the drawing took. The time spent showing the
+     * frame isn't counted, waiting for the vertical retrace isn't something a lower quality would save.
+     */
+    private void drawFrame(WorldSnapshot snapshot){
+        if(governor.frameDrawn(gameStep(snapshot, alpha(snapshot)))){
+            applyQuality();
+        }
+        countSprites();
+    }
+
+    /**
+     * Keeps the fewest and the most sprites drawn and culled in a frame, for the summary when the game ends
+     */
+    private void countSprites(){
+        int drawn = currentLevel.getLastFrameDrawnSprites();
+        int culled = currentLevel.getLastFrameCulledSprites();
+        logger.debug("the frame drew {} sprites and culled {}", drawn, culled);
+        fewestDrawnSprites = Math.min(fewestDrawnSprites, drawn);
+        mostDrawnSprites = Math.max(mostDrawnSprites, drawn);
+        fewestCulledSprites = Math.min(fewestCulledSprites, culled);
+        mostCulledSprites = Math.max(mostCulledSprites, culled);
+    }
+
+    /**
+     * Turns the drawing's knobs to the governor's levels. The resolution changes once the images are scaled for it.
+     */
+    private void applyQuality(){
+        antialiasing = governor.isAntialiasing() ?
+                RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF;
+        interpolating = governor.isInterpolating();
+        particles.setStride(governor.getParticleStride());
+        currentLevel.setParallaxShown(governor.isParallaxShown());
+        importer.setScaleFactor(governor.getRenderScale());
+        if(dirtyRegions != null){
+            dirtyRegions.invalidateAll();
         }
     }
 
@@ -157,26 +618,55 @@ public class Game {
     }
 
     /**
-     * Executes all the stuff that needs to be done in single game time tick.
+     * Draws and shows a frame of a snapshot. A frame restored and drawn again draws the same snapshot, the simulation
+     * doesn't run again.
+     * @param snapshot the snapshot to draw
+     * @param alpha how far the frame is from the snapshot's previous tick to its tick, 0 to 1
+     * @return how long drawing the frame took, before it was shown, in nanoseconds
      */
-    private void gameStep(UserInputTriggeredState pause){
-        BufferStrategy strategy;
+    private long gameStep(WorldSnapshot snapshot, float alpha){
+        long started = System.nanoTime();
         int infiniteLoopCounter = 0;
-        long currentGameTime = System.currentTimeMillis();
-        strategy = getWindowBufferStrategy();
-        if(strategy == null){
-            logger.fatal("received null buffer strategy, nowhere to draw.");
-            return;
+        repaintNeeded = false;
+        if(!renderTarget.startFrame()){
+            logger.fatal("the render target isn't ready, nowhere to draw.");
+            return 0;
+        }
+        boolean displayChanged = importer.updateConfiguration();
+        // only known once the images are scaled for it
+        float resolution = importer.getAppliedScaleFactor();
+        // a frame drawn at a lower resolution is repainted whole, the tracker follows the screen's buffers
+        DirtyRegionTracker tracker = (partialRedrawSupported && resolution == 1) ? dirtyRegions : null;
+        if(displayChanged){
+            // the images were converted for the new display, the level's caches are made of the old ones
+            currentLevel.displayChanged();
+            if(tracker != null){
+                tracker.invalidateAll();
+            }
+        }
+        boolean showPaused = paused;
+        if(tracker != null && showPaused != wasPaused){
+            // the pause sign needs to be painted or erased everywhere
+            tracker.invalidateAll();
         }
+        wasPaused = showPaused;
         do {
+            if(tracker != null && infiniteLoopCounter > 0){
+                // the buffer was restored, whatever we painted before is gone
+                tracker.invalidateAll();
+            }
             // draw the screen
-            Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
-            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            Graphics2D g = renderTarget.getDrawGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
             logger.debug("about to draw the level, loop counter = {}",infiniteLoopCounter);
             try {
-                processUserInput(currentGameTime);
-                currentLevel.draw(g, getWidth(), getHeight());
-                if(pause.isActive()){
+                if(resolution < 1){
+                    drawLowResolution(g, snapshot, alpha, resolution);
+                } else {
+                    lowResolutionFrame = null;
+                    currentLevel.draw(g, getWidth(), getHeight(), tracker, snapshot, alpha);
+                }
+                if(showPaused){
                     pause(g);
                 }
                 g.dispose();
@@ -186,87 +676,63 @@ public class Game {
                 logger.debug("done drawing the level");
             }
             infiniteLoopCounter++;
-        }while (strategy.contentsRestored() && infiniteLoopCounter<10);
+        }while (renderTarget.contentsRestored() && infiniteLoopCounter<10);
         if(infiniteLoopCounter >=10){
             throw new GraphicsException("Drawing a level couldn't be completed - the memory is too volatile.");
         }
+        long drawn = System.nanoTime() - started;
         //todo might need an external loop while (strategy.contentsLost());
         try {
-            if (!strategy.contentsLost()) {
+            if (!renderTarget.contentsLost()) {
 //                    logger.debug("about to show the strategy");
-                    strategy.show();
+                    renderTarget.show();
             }
             else {
                 logger.debug("STRATEGY.CONTENT LOST()");
+                repaintNeeded = true;
+                if(tracker != null){
+                    tracker.invalidateAll();
+                }
             }
         }catch (Throwable t){
             logger.error("unable to show the strategy due to",t);
+            repaintNeeded = true;
         }
 //        finally {
 //            logger.debug("Strategy shown");
 //        }
-        // Sync the display on some systems.
-        // (on Linux, this fixes event queue problems)
-        Toolkit.getDefaultToolkit().sync();
-        try {
-            Thread.sleep(10);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        return drawn;
     }
 
     /**
-     * @return strategy for the drawing window or null if there is a problem
+     * Draws the level into an image a share of the screen's size, then scales it up to the screen
+     * @param resolution the share of the screen's resolution the images are scaled for
      */
-    public BufferStrategy getWindowBufferStrategy() {
-        Window window = device.getFullScreenWindow();
-        if (window != null) {
-            try {
-//                logger.debug("getting the strategy for the window");
-                return window.getBufferStrategy();
-            }catch (Throwable t){
-                logger.error("Couldn't get graphics from the window",t);
-                return null;
-            }
-//            finally {
-//                logger.debug("got strategy, coming back");
-//            }
+    private void drawLowResolution(Graphics2D screen, WorldSnapshot snapshot, float alpha, float resolution){
+        int width = Math.max(1, (int) Math.ceil(getWidth() * resolution));
+        int height = Math.max(1, (int) Math.ceil(getHeight() * resolution));
+        if(lowResolutionFrame == null || lowResolutionFrame.getWidth() != width
+                || lowResolutionFrame.getHeight() != height){
+            GraphicsConfiguration configuration = importer.getConfiguration();
+            lowResolutionFrame = (configuration != null) ? configuration.createCompatibleImage(width, height) :
+                    new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         }
-        else {
-            logger.fatal("returning null strategy bcz the window is null");
-            return null;
+        Graphics2D g = lowResolutionFrame.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+            currentLevel.draw(g, width, height, null, snapshot, alpha);
+        } finally {
+            g.dispose();
         }
+        screen.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        screen.drawImage(lowResolutionFrame, 0, 0, getWidth(), getHeight(), null);
     }
+
     public int getWidth() {
-        Window window = device.getFullScreenWindow();
-        if (window != null) {
-            return window.getWidth();
-        }
-        else {
-            return 0;
-        }
+        return renderTarget.getWidth();
     }
 
-
-    /**
-     Returns the height of the window currently used in full
-     screen mode. Returns 0 if the device is not in full
-     screen mode.
-     */
     public int getHeight() {
-        Window window = device.getFullScreenWindow();
-        if (window != null) {
-            return window.getHeight();
-        }
-        else {
-            return 0;
-        }
-    }
-    private void closeGui(){
-        Window window = device.getFullScreenWindow();
-        if (window != null) {
-            window.dispose();
-        }
-        device.setFullScreenWindow(null);
+        return renderTarget.getHeight();
     }
 }
\ No newline at end of file
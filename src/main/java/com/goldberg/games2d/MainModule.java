@@ -3,8 +3,8 @@ package com.goldberg.games2d;
 import com.goldberg.games2d.data.Level;
 import com.goldberg.games2d.exceptions.Games2dException;
 import com.goldberg.games2d.gamelogic.*;
-import com.goldberg.games2d.hardware.ImageInfo;
-import com.goldberg.games2d.hardware.KeyPublisher;
+import com.goldberg.games2d.graphics.*;
+import com.goldberg.games2d.hardware.*;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
@@ -35,13 +35,23 @@ public class MainModule extends AbstractModule {
     @Override
     protected void configure() {
         Properties keyMap = new Properties();
+        Properties rendering = new Properties();
         try {
             keyMap.load(Files.newInputStream(Path.of("configuration/keymap.properties")));
         } catch (IOException e) {
             throw new Games2dException("Unable to read key configuration file",e);
         }
+        try {
+            rendering.load(Files.newInputStream(Path.of("configuration/rendering.properties")));
+        } catch (IOException e) {
+            throw new Games2dException("Unable to read rendering configuration file",e);
+        }
+        // so a build machine can run with e.g. -DRENDER_BACKEND=OFFSCREEN without touching the file
+        rendering.stringPropertyNames().forEach(name ->
+                rendering.setProperty(name, System.getProperty(name, rendering.getProperty(name))));
         bind(Sprite.class).toProvider(SpriteProvider.class);
         Names.bindProperties(binder(), keyMap);
+        Names.bindProperties(binder(), rendering);
         bind(Game.class).in(Singleton.class);
         bind(KeyListener.class).to(KeyPublisher.class).in(Singleton.class);
     }
@@ -50,11 +60,6 @@ public class MainModule extends AbstractModule {
         return new ArrayBlockingQueue<>(100);
     }
 
-    @Provides @Singleton @Named("LevelDrawingQueue")
-    BlockingQueue<ImageInfo> makeLevelDrawingQueue(){
-        return new ArrayBlockingQueue<>(100);
-    }
-
     /**
      * Considering type erasure we should start naming maps right away
      * @return a map of handlers - key to handler
@@ -85,7 +90,10 @@ public class MainModule extends AbstractModule {
                 .addCommand(new KeyCommand(-1,0,"LEFT",KeyEvent.VK_LEFT))
                 .addCommand(new KeyCommand(-1,1,"DOWN_LEFT",KeyEvent.VK_END));
     }
-    @Provides @Singleton
+    /**
+     * @return new behaviors for a sprite, they keep the state of the sprite they control
+     */
+    @Provides
     Map<String,BehaviorStyle> makeBehaviors(Player player, Immovable immovable){
         HashMap<String, BehaviorStyle> behaviors = new HashMap<>();
         behaviors.put("PLAYER",player);
@@ -101,6 +109,57 @@ public class MainModule extends AbstractModule {
         return new Immovable();
     }
     
+    /**
+     * @return the render target selected by RENDER_BACKEND, recording the frames if CAPTURE is on
+     */
+    @Provides @Singleton
+    RenderTarget makeRenderTarget(@Named("RENDER_BACKEND") String backend,
+                                  @Named("OFFSCREEN_WIDTH") String offscreenWidth,
+                                  @Named("OFFSCREEN_HEIGHT") String offscreenHeight,
+                                  @Named("DISPLAY_WIDTH") String displayWidth,
+                                  @Named("DISPLAY_HEIGHT") String displayHeight,
+                                  @Named("CAPTURE") String capture,
+                                  @Named("CAPTURE_DIRECTORY") String captureDirectory,
+                                  @Named("CAPTURE_BUFFERS") String captureBuffers){
+        RenderTarget target;
+        switch (RenderBackend.valueOf(backend.trim())){
+            case OFFSCREEN:
+                target = new OffscreenRenderTarget(Integer.parseInt(offscreenWidth.trim()),
+                        Integer.parseInt(offscreenHeight.trim()));
+                break;
+            case NONE:
+                target = new NoRenderTarget();
+                break;
+            case FULLSCREEN:
+            default:
+                target = new FullScreenRenderTarget(Integer.parseInt(displayWidth.trim()),
+                        Integer.parseInt(displayHeight.trim()));
+        }
+        CaptureFormat format = CaptureFormat.valueOf(capture.trim());
+        if(format == CaptureFormat.OFF){
+            return target;
+        }
+        return new CapturingRenderTarget(target, new FrameRecorder(format, captureDirectory.trim(),
+                Integer.parseInt(captureBuffers.trim())));
+    }
+
+    /**
+     * @return the clock selected by CLOCK, the game loop and the simulation share it
+     */
+    @Provides @Singleton
+    GameClock makeGameClock(@Named("CLOCK") String clock,
+                            @Named("VIRTUAL_FRAME_RATE") String virtualFrameRate){
+        switch (ClockMode.valueOf(clock.trim())){
+            case VIRTUAL:
+                return VirtualClock.forFrameRate(Integer.parseInt(virtualFrameRate.trim()));
+            case FAST:
+                return new FastClock();
+            case REAL:
+            default:
+                return new RealTimeClock();
+        }
+    }
+
     @Provides @Named("DataDirectoryPath")
     String dataDirectoryPath(){ return "data/"; }
 
@@ -110,8 +169,16 @@ public class MainModule extends AbstractModule {
      */
     @Provides
     Level makeLevel(SpriteProvider spriteProvider, @Named("DataDirectoryPath") String dataDirPath, 
-                    @Named("LevelDrawingQueue") BlockingQueue<ImageInfo> levelDrawingQueue){
-        Level currentLevel = new Level(spriteProvider, dataDirPath, levelDrawingQueue);
+                    RenderCommandBuffer renderCommands, ImageImporter importer, TextureAtlas atlas,
+                    ParticleSystem particles,
+                    @Named("RASTERIZER") String rasterizer, @Named("RASTERIZER_THREADS") String rasterizerThreads,
+                    @Named("MINIMAP_SIZE") String minimapSize, @Named("VIEWPORTS") String viewports){
+        Level currentLevel = new Level(spriteProvider, dataDirPath, renderCommands, importer, atlas, particles);
+        if(RasterizerType.valueOf(rasterizer.trim()) == RasterizerType.SOFTWARE){
+            currentLevel.setSoftwareRasterizer(new SoftwareRasterizer(Integer.parseInt(rasterizerThreads.trim())));
+        }
+        currentLevel.setMinimapSize(Integer.parseInt(minimapSize.trim()));
+        currentLevel.setViewportCount(Integer.parseInt(viewports.trim()));
         currentLevel.read("level1.txt");
         return currentLevel;
     }
@@ -1,15 +1,16 @@
 package com.goldberg.games2d;
 
+import com.goldberg.games2d.gamelogic.AnimationLibrary;
 import com.goldberg.games2d.gamelogic.BehaviorStyle;
 import com.goldberg.games2d.gamelogic.CommandSet;
 import com.goldberg.games2d.gamelogic.Sprite;
-import com.goldberg.games2d.hardware.ImageInfo;
+import com.goldberg.games2d.graphics.ParticleSystem;
+import com.goldberg.games2d.graphics.TextureAtlas;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.name.Named;
 
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 
 /**
  * Provider for {@link com.goldberg.games2d.gamelogic.Sprite} instances
@@ -19,23 +20,27 @@ import java.util.concurrent.BlockingQueue;
 public class SpriteProvider implements Provider<Sprite> {
     private final String dataDirPath;
     private final CommandSet defaultCommands;
-    private final Map<String, BehaviorStyle> behaviors;
-    private final BlockingQueue<ImageInfo> levelDrawingQueue;
+    private final Provider<Map<String, BehaviorStyle>> behaviors;
+    private final AnimationLibrary animationLibrary;
+    private final TextureAtlas atlas;
+    private final ParticleSystem particles;
 
     @Inject
     public SpriteProvider(@Named("DataDirectoryPath") String dataDirPath, CommandSet defaultCommands,
-                          Map<String, BehaviorStyle> behaviors,
-                          @Named("LevelDrawingQueue") BlockingQueue<ImageInfo> levelDrawingQueue  ) {
+                          Provider<Map<String, BehaviorStyle>> behaviors,
+                          AnimationLibrary animationLibrary, TextureAtlas atlas, ParticleSystem particles) {
         this.dataDirPath = dataDirPath;
         this.defaultCommands = defaultCommands;
         this.behaviors = behaviors;
-        this.levelDrawingQueue = levelDrawingQueue;
+        this.animationLibrary = animationLibrary;
+        this.atlas = atlas;
+        this.particles = particles;
     }
     /**
-     * @return a new instance of a Sprite 
+     * @return a new instance of a Sprite, with behaviors of its own
      */
     @Override
     public Sprite get() {
-        return new Sprite(dataDirPath,defaultCommands.copy(),behaviors, levelDrawingQueue);
+        return new Sprite(dataDirPath,defaultCommands.copy(),behaviors.get(), animationLibrary, atlas, particles);
     }
 }
@@ -0,0 +1,18 @@
+package com.goldberg.games2d;
+
+/**
+ * How the game loop divides the simulation and the drawing between threads
+ * @author antonymouse
+ * @since 0.3
+ */
+public enum ThreadingMode {
+    /**
+     * One thread runs the ticks due, then draws a frame, then idles if nothing moves
+     */
+    SINGLE,
+    /**
+     * The simulation ticks on a thread of its own and publishes a snapshot per tick, the drawing thread draws the
+     * latest snapshot; a slow frame doesn't hold up the ticks and a slow tick doesn't hold up the frames
+     */
+    SPLIT
+}
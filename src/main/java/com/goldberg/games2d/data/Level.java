@@ -2,27 +2,59 @@ package com.goldberg.games2d.data;
 
 import com.goldberg.games2d.exceptions.LevelBuildingException;
 import com.goldberg.games2d.gamelogic.FrogPlantBinaryInteraction;
+import com.goldberg.games2d.gamelogic.InputFrame;
 import com.goldberg.games2d.gamelogic.KeyCommand;
 import com.goldberg.games2d.gamelogic.Sprite;
-import com.goldberg.games2d.hardware.ImageInfo;
+import com.goldberg.games2d.graphics.Camera;
+import com.goldberg.games2d.graphics.DirtyRegionTracker;
+import com.goldberg.games2d.graphics.LightingLayer;
+import com.goldberg.games2d.graphics.Minimap;
+import com.goldberg.games2d.graphics.ParallaxLayer;
+import com.goldberg.games2d.graphics.ParticleSystem;
+import com.goldberg.games2d.graphics.RenderCommandBuffer;
+import com.goldberg.games2d.graphics.RenderCommandList;
+import com.goldberg.games2d.graphics.RenderLayer;
+import com.goldberg.games2d.graphics.SoftwareRasterizer;
+import com.goldberg.games2d.graphics.SpriteFrame;
+import com.goldberg.games2d.graphics.TextureAtlas;
+import com.goldberg.games2d.graphics.Viewport;
+import com.goldberg.games2d.hardware.ImageImporter;
+import com.goldberg.games2d.hardware.ImportedImage;
 import com.google.inject.Provider;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 
 /**
  * The class represents a level in the game. It's capable of reading the map, validating it, providing map-based
  * information.
+ * Besides the tiles, the sprites and the map, the level's file may declare {@link ParallaxLayer}s, one per line:
+ * parallax:image file;rate[;layer] where the layer is a {@link com.goldberg.games2d.graphics.RenderLayer},
+ * BACKGROUND (behind the map, the default) or FOREGROUND (over the sprites). The layers are drawn in their order in
+ * the file.
+ * An optional line lighting:radius;unexplored darkness;explored darkness puts a {@link LightingLayer} over the map,
+ * with a light of the given radius (in tiles) carried by each player. The darkness values go from 0 to 1. There may be
+ * only one such line.
+ * The level is shown in one or more {@link Viewport}s side by side, each following one of the players (the sprites
+ * of the PLAYER type, in the file's order). The viewports share the simulation and the sprites' frames, the
+ * sprites and the particles are culled against all the cameras at once.
+ * The level has two sides, which may run on two threads. The simulation ({@link #startTick(long)},
+ * {@link #processTick(InputFrame, long)}) moves the sprites and the particles and finds the animated tiles' frames, then
+ * {@link #publish(long)} copies what the drawing needs into a {@link WorldSnapshot}. The drawing
+ * ({@link #draw(Graphics2D, int, int, DirtyRegionTracker, WorldSnapshot, float)}) reads only the latest snapshot
+ * and owns everything made for the screen: the tile map cache, the lighting, the minimap and the cameras.
  * @author antonymouse
  * @since 0.0
  */
@@ -30,27 +62,123 @@ public class Level {
     private final String dataDirPath;
     private int TILE_SIZE_BITS;
     private int TILE_SIZE;
-    private int MAP_WIDTH;
     public static final String COMMENT_DESIGNATOR = "==";
     public static final String SPRITE_DESIGNATOR = "sprite";
+    public static final String PARALLAX_DESIGNATOR = "parallax:";
+    public static final String LIGHTING_DESIGNATOR = "lighting:";
     private Map<String,Tile> tiles;
     private List<Sprite> mySprites;
+    private List<ParallaxLayer> backgroundLayers = List.of();
+    private List<ParallaxLayer> foregroundLayers = List.of();
+    /**
+     * False if the parallax layers are left out to save time, the drawing thread's
+     */
+    private boolean parallaxShown = true;
+    /**
+     * null if the level isn't lit
+     */
+    private LightingLayer lighting;
+    private int[] playerLights;
+    /**
+     * null if there's no minimap
+     */
+    private Minimap minimap;
+    /**
+     * The longer side of the minimap in pixels, 0 for no minimap
+     */
+    private int minimapSize;
+    /**
+     * The sprites' markers on the minimap, in the order of mySprites
+     */
+    private int[] spriteMarkers;
+    private static final int PLAYER_MARKER_COLOR = 0xFFFF40;
+    private static final int SPRITE_MARKER_COLOR = 0xFF3030;
+    /**
+     * Space between the minimap and the screen's edges, pixels
+     */
+    private static final int MINIMAP_MARGIN = 8;
     private final Provider<Sprite> spriteProvider;
-    private final BlockingQueue<ImageInfo> drawingQueue;
+    private final RenderCommandBuffer renderCommands;
     private Tile[][] map;
+    private TileMapCache tileMapCache;
+    private final List<Viewport> viewports = new ArrayList<>();
+    private final List<Camera> cameras = new ArrayList<>();
+    /**
+     * How many viewports the screen is split into, if there are enough players
+     */
+    private int viewportCount = 1;
+    /**
+     * Black space between the viewports, pixels
+     */
+    private static final int VIEWPORT_DIVIDER = 4;
+    /**
+     * Renders the frames instead of Java2D if set
+     */
+    private SoftwareRasterizer rasterizer;
+    private ImportedImage[][] tileImages;
+    /**
+     * The animated tile types and where each of them is on the map (y * map width + x), their frames are found once
+     * per tick by {@link #publish(long)} and shown by {@link #showTileFrames(WorldSnapshot)}
+     */
+    private Tile[] animatedTileTypes = new Tile[0];
+    private int[][] animatedTileCells = new int[0][];
+    /**
+     * The game time of the current tick and of the one before it, the frames are drawn in between
+     */
+    private long tickTime = Long.MIN_VALUE, previousTickTime = Long.MIN_VALUE;
+    /**
+     * How far out of the camera's view a sprite may be and still get drawn, in tiles. Covers the sprites larger than
+     * a tile.
+     */
+    private static final int CULL_MARGIN_TILES = 2;
+    // sprites culled and drawn since the last frame, in the last frame and in all the frames
+    private int culledSprites, drawnSprites;
+    private int lastFrameCulledSprites, lastFrameDrawnSprites;
+    private long totalCulledSprites, totalDrawnSprites;
+    private final ImageImporter importer;
+    private final TextureAtlas atlas;
+    private final ParticleSystem particles;
     /**
      * Distances between all sprites, recalculated at each step. N**2 algorithm - optimize if needed.
      */
     private final Map<Sprite,int[]> spriteDistances;
     private static final Logger logger = LogManager.getLogger();
-    private Sprite player;
+    private final List<Sprite> players = new ArrayList<>();
+    /**
+     * The players' indexes in mySprites
+     */
+    private int[] playerIndexes;
+    private SnapshotBuffer snapshots;
+    // the simulation's side of the snapshots
+    private long publishedSequence, lastChange;
+    /**
+     * True if the simulation ran since the last snapshot was published, it doesn't while the game is paused
+     */
+    private boolean simulated;
+    private int[] publishedTileFrames;
+    /**
+     * The sequence of the snapshot the drawing's state (tiles, lights, minimap) was last brought up to
+     */
+    private long appliedSequence;
     private final FrogPlantBinaryInteraction frog2plant = new FrogPlantBinaryInteraction();
 
+    /**
+     * @param spriteProvider creates the sprites listed in the level's file
+     * @param dataDirPath where all the data files are
+     * @param renderCommands where the sprites put their frames for drawing
+     * @param importer converts the tiles for the device the level is drawn on
+     * @param atlas keeps the sprites' frames, gets packed once all the sprites are loaded
+     * @param particles the sprites' particles, moved with the level's time
+     */
     public Level(Provider<Sprite> spriteProvider, String dataDirPath, 
-                 BlockingQueue<ImageInfo> drawingQueue) {
+                 RenderCommandBuffer renderCommands, ImageImporter importer, TextureAtlas atlas,
+                 ParticleSystem particles) {
+        this.particles = particles;
         this.dataDirPath = dataDirPath;
+        this.importer = importer;
+        this.atlas = atlas;
         this.spriteProvider = spriteProvider;
-        this.drawingQueue = drawingQueue;
+        this.renderCommands = renderCommands;
         spriteDistances = new HashMap<>();
     }
     /**
@@ -61,19 +189,148 @@ public class Level {
             List<String> allLines = Files.readAllLines(FileSystems.getDefault().getPath(dataDirPath+levelMapFile));
             tiles = readTiles(allLines);
             mySprites = readSprites(allLines);
+            readParallaxLayers(allLines);
+            atlas.pack();
             // now that we know how many of them we got...
             mySprites.forEach(sprite -> spriteDistances.put(sprite, new int[mySprites.size()]));    
             // all tiles within a level must be the same size
             TILE_SIZE = tiles.entrySet().iterator().next().getValue().TILE_SIZE;
             TILE_SIZE_BITS = (int)(Math.log(TILE_SIZE) / Math.log(2));
             map = readMap(allLines);
-            MAP_WIDTH = tilesToPixels(map[0].length);
+            buildViewports();
+            readLighting(allLines);
+            buildMinimap();
             logger.debug("read map of size {} {} y,x",map.length,map[0].length);
+            buildTileMapCache();
+            tileImages = new ImportedImage[map.length][];
+            Map<Tile, List<Integer>> animatedCells = new HashMap<>();
+            for (int y = 0; y < map.length; y++) {
+                tileImages[y] = new ImportedImage[map[y].length];
+                for (int x = 0; x < map[y].length; x++) {
+                    tileImages[y][x] = map[y][x].getImage();
+                    if (map[y][x].isAnimated()) {
+                        animatedCells.computeIfAbsent(map[y][x], tile -> new ArrayList<>()).add(y * map[0].length + x);
+                    }
+                }
+            }
+            animatedTileTypes = animatedCells.keySet().toArray(new Tile[0]);
+            animatedTileCells = new int[animatedTileTypes.length][];
+            for (int i = 0; i < animatedTileTypes.length; i++) {
+                animatedTileCells[i] = animatedCells.get(animatedTileTypes[i]).stream().mapToInt(Integer::intValue)
+                        .toArray();
+            }
+            logger.debug("{} animated tile types on the map", animatedTileTypes.length);
+            playerIndexes = players.stream().mapToInt(mySprites::indexOf).toArray();
+            publishedTileFrames = new int[animatedTileTypes.length];
+            Arrays.fill(publishedTileFrames, -1);
+            snapshots = new SnapshotBuffer(mySprites.size(), animatedTileTypes.length, particles.getCapacity());
         }catch (IOException ioe){
             throw new LevelBuildingException("Unable to read the level's file:"+levelMapFile,ioe);
         }
     }
 
+    /**
+     * Makes the level render its frames in software instead of Java2D. The partial redraw doesn't apply then, every
+     * frame is rendered completely.
+     * @param rasterizer the rasterizer to use, null to go back to Java2D
+     */
+    public void setSoftwareRasterizer(SoftwareRasterizer rasterizer){
+        this.rasterizer = rasterizer;
+    }
+
+    /**
+     * Splits the screen between the players. Call before reading the level.
+     * @param count how many viewports to show at most, one per player
+     */
+    public void setViewportCount(int count){
+        this.viewportCount = count;
+    }
+
+    private void buildViewports(){
+        int count = Math.max(1, Math.min(Math.min(viewportCount, players.size()), ParticleSystem.MAX_CAMERAS));
+        if(count < viewportCount){
+            logger.info("{} viewports asked for, the level has {} players: showing {}", viewportCount, players.size(),
+                    count);
+        }
+        for (int i = 0; i < count; i++) {
+            Viewport viewport = new Viewport();
+            viewport.getCamera().setMapSize(tilesToPixels(map[0].length), tilesToPixels(map.length));
+            viewports.add(viewport);
+            cameras.add(viewport.getCamera());
+        }
+        logger.debug("{} viewports for {} players", count, players.size());
+    }
+
+    /**
+     * Shows a minimap of the whole level over its view, in the screen's top right corner. Call before reading the
+     * level.
+     * @param size the longer side of the minimap in pixels, 0 for no minimap
+     */
+    public void setMinimapSize(int size){
+        this.minimapSize = size;
+    }
+
+    private void buildMinimap(){
+        if(minimapSize <= 0){
+            return;
+        }
+        int[] colors = new int[map.length * map[0].length];
+        for (int y = 0; y < map.length; y++) {
+            for (int x = 0; x < map[0].length; x++) {
+                colors[y * map[0].length + x] = map[y][x].getAverageColor();
+            }
+        }
+        minimap = new Minimap(map[0].length, map.length, minimapSize, colors);
+        // the players' markers go last, on top of the others
+        spriteMarkers = new int[mySprites.size()];
+        for (int i = 0; i < mySprites.size(); i++) {
+            if(!players.contains(mySprites.get(i))){
+                spriteMarkers[i] = minimap.addMarker(SPRITE_MARKER_COLOR);
+            }
+        }
+        for (int i = 0; i < mySprites.size(); i++) {
+            if(players.contains(mySprites.get(i))){
+                spriteMarkers[i] = minimap.addMarker(PLAYER_MARKER_COLOR);
+            }
+        }
+        logger.debug("minimap of {}x{}", minimap.getWidth(), minimap.getHeight());
+    }
+
+    /**
+     * Moves the sprites' markers on the minimap to where the sprites are in the snapshot
+     */
+    private void moveMarkers(WorldSnapshot snapshot){
+        if(minimap == null){
+            return;
+        }
+        for (int i = 0; i < spriteMarkers.length; i++) {
+            minimap.moveMarker(spriteMarkers[i],
+                    Math.max(0, Math.min(pixelsToTiles(snapshot.xs[i] + TILE_SIZE/2), map[0].length - 1)),
+                    Math.max(0, Math.min(pixelsToTiles(snapshot.ys[i] + TILE_SIZE/2), map.length - 1)));
+        }
+    }
+
+    /**
+     * Rebuilds the caches made for the previous display. Call after the {@link ImageImporter} converted the images
+     * for the new one.
+     */
+    public void displayChanged(){
+        buildTileMapCache();
+    }
+
+    /**
+     * Shows or leaves out the parallax layers, e.g. to save time on slow hardware. Belongs to the drawing.
+     * @param shown false to draw the level without its parallax layers
+     */
+    public void setParallaxShown(boolean shown){
+        parallaxShown = shown;
+    }
+
+    private void buildTileMapCache(){
+        tileMapCache = new TileMapCache(map, TILE_SIZE, importer.getConfiguration(), importer.getScale());
+        tileMapCache.prewarm();
+    }
+
     /**
      * Locates (if exists) a tile of the given type in the given direction within the given distance from the
      * starting point. Operates in absolute (map) coordinates
@@ -109,18 +366,192 @@ public class Level {
     }
 
     /**
-     * Sends the message to each of the sprites on this level. See {@link Sprite}
-     * @param message some keyboard event
-     * @param currentTime current game time
-     * @see Sprite#processMessage(int[], long, Level) Sprite's process message
+     * Shows the animated tiles' frames of the snapshot: each animated tile type is moved to its frame once, however
+     * many times the tile is on the map, and only the map chunks containing the tiles which changed their frame are
+     * invalidated.
+     */
+    private void showTileFrames(WorldSnapshot snapshot){
+        for (int i = 0; i < animatedTileTypes.length; i++) {
+            Tile tile = animatedTileTypes[i];
+            if(tile.showFrame(snapshot.tileFrames[i])){
+                tileMapCache.invalidate(tile);
+                ImportedImage frame = tile.getImage();
+                for (int cell : animatedTileCells[i]) {
+                    tileImages[cell / map[0].length][cell % map[0].length] = frame;
+                }
+                if(minimap != null){
+                    int color = tile.getAverageColor();
+                    for (int cell : animatedTileCells[i]) {
+                        minimap.setTileColor(cell % map[0].length, cell / map[0].length, color);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if a sprite is close enough to any camera's view to be drawn, and counts it either way
+     * @param x map x of the sprite
+     * @param y map y of the sprite
+     * @return true if the sprite's frame should be submitted, false if it's culled
+     */
+    private boolean cull(int x, int y){
+        int margin = tilesToPixels(CULL_MARGIN_TILES);
+        for (int i = 0; i < cameras.size(); i++) {
+            Camera camera = cameras.get(i);
+            // until the first frame there is no viewport to cull against
+            if(camera.getWidth() == 0 || camera.sees(x - margin, y - margin, TILE_SIZE + 2 * margin,
+                    TILE_SIZE + 2 * margin)){
+                drawnSprites++;
+                return true;
+            }
+        }
+        culledSprites++;
+        return false;
+    }
+
+    /**
+     * @return sprites culled in the last frame
+     */
+    public int getLastFrameCulledSprites(){
+        return lastFrameCulledSprites;
+    }
+
+    /**
+     * @return sprites drawn in the last frame
+     */
+    public int getLastFrameDrawnSprites(){
+        return lastFrameDrawnSprites;
+    }
+
+    /**
+     * @return sprites culled in all the frames so far
+     */
+    public long getTotalCulledSprites(){
+        return totalCulledSprites;
+    }
+
+    /**
+     * @return sprites drawn in all the frames so far
      */
-    public void processMessage(int[] message, long currentTime){
+    public long getTotalDrawnSprites(){
+        return totalDrawnSprites;
+    }
+
+    /**
+     * Starts a simulation tick: the sprites remember where they are, so the frames drawn until the next tick can
+     * show them moving from there. Called once per tick, paused or not, before {@link #processTick(InputFrame, long)}.
+     * @param currentTime the tick's game time
+     */
+    public void startTick(long currentTime){
+        previousTickTime = (tickTime == Long.MIN_VALUE) ? currentTime : tickTime;
+        tickTime = currentTime;
+        if(mySprites!=null){
+            mySprites.forEach(Sprite::startTick);
+        }
+    }
+
+    /**
+     * Runs the tick's simulation once, whatever input came: the particles, each of the sprites with the tick's input,
+     * then the interactions between the sprites. Called once per tick, after {@link #startTick(long)}, unless the
+     * game is paused.
+     * @param input the keys pressed and held in the tick
+     * @param currentTime the tick's game time
+     * @see Sprite#processTick(InputFrame, long, Level) Sprite's process tick
+     */
+    public void processTick(InputFrame input, long currentTime){
+        simulated = true;
+        particles.update(currentTime);
         if(mySprites!=null && !mySprites.isEmpty()){
-            mySprites.forEach(sprite -> sprite.processMessage(message,currentTime,this));
+            mySprites.forEach(sprite -> sprite.processTick(input, currentTime, this));
             calculateSpriteDistances(currentTime);
         }
     }
 
+    /**
+     * Tells the game loop when there is something new to draw without any input: right away while a sprite moves or
+     * particles fly, otherwise when the next animated tile changes its frame.
+     * @param currentTime current game time
+     * @return the time the level's picture changes next by itself, Long.MAX_VALUE if only the input can change it
+     */
+    public long nextChangeAt(long currentTime){
+        if(particles.size() > 0){
+            return currentTime;
+        }
+        if(mySprites != null){
+            for (Sprite sprite : mySprites) {
+                if(sprite.isAnimating(currentTime)){
+                    return currentTime;
+                }
+            }
+        }
+        long next = Long.MAX_VALUE;
+        for (Tile tile : animatedTileTypes) {
+            next = Math.min(next, tile.nextFrameAt(currentTime));
+        }
+        return next;
+    }
+
+    /**
+     * Publishes the tick for the drawing: copies the sprites' positions at the previous tick and now, their frames,
+     * the animated tiles' frames and the particles into the next snapshot. Called once per tick, after the tick's
+     * messages.
+     * @param simulatedAt when the tick was simulated on the game loop's clock,
+     * {@link com.goldberg.games2d.hardware.GameClock#nanoTime()}
+     * @return true if the snapshot is still: nothing moved in the tick
+     */
+    public boolean publish(long simulatedAt){
+        WorldSnapshot snapshot = snapshots.startWriting();
+        snapshot.sequence = ++publishedSequence;
+        snapshot.simulatedAt = simulatedAt;
+        snapshot.tickTime = tickTime;
+        snapshot.previousTickTime = previousTickTime;
+        boolean tilesChanged = false;
+        for (int i = 0; i < animatedTileTypes.length; i++) {
+            int frame = animatedTileTypes[i].frameAt(tickTime);
+            tilesChanged |= frame != publishedTileFrames[i];
+            publishedTileFrames[i] = frame;
+            snapshot.tileFrames[i] = frame;
+        }
+        for (int i = 0; i < mySprites.size(); i++) {
+            Sprite sprite = mySprites.get(i);
+            snapshot.previousXs[i] = sprite.getState().getPrevious().getX();
+            snapshot.previousYs[i] = sprite.getState().getPrevious().getY();
+            snapshot.xs[i] = sprite.getState().getCurrent().getX();
+            snapshot.ys[i] = sprite.getState().getCurrent().getY();
+            snapshot.frameIds[i] = sprite.frameIdAt(tickTime);
+            snapshot.layers[i] = sprite.getLayer().ordinal();
+        }
+        snapshot.particleCount = particles.copyTo(snapshot.particleFrameIds, snapshot.particleXs,
+                snapshot.particleYs, snapshot.particleLayers, snapshot.particleDepths);
+        // an animated sprite may show the same picture for a while, but that's not worth comparing the frames;
+        // without the simulation (the game is paused) nothing moves
+        snapshot.still = !tilesChanged && (!simulated || nextChangeAt(tickTime) > tickTime);
+        simulated = false;
+        if(!snapshot.still){
+            lastChange = snapshot.sequence;
+        }
+        snapshot.lastChange = lastChange;
+        snapshots.publish();
+        return snapshot.still;
+    }
+
+    /**
+     * @return the latest snapshot published by the simulation, valid until the next call, null if there is none yet
+     */
+    public WorldSnapshot latestSnapshot(){
+        return snapshots.latest();
+    }
+
+    /**
+     * Sleeps until the simulation publishes a snapshot the drawing hasn't taken yet. Belongs to the drawing.
+     * @param timeoutNanos how long to wait at most
+     * @return true if there is a new snapshot
+     */
+    public boolean awaitSnapshot(long timeoutNanos){
+        return snapshots.awaitFresh(timeoutNanos);
+    }
+
     private void calculateSpriteDistances(long currentTime) {
         // N**2 algo, optimize if needed
         for (int i = 0; i < mySprites.size(); i++)  {
@@ -130,8 +561,9 @@ public class Level {
                 Sprite sprite1 =  mySprites.get(j);
                 currentSpriteDistances[j] = pixelsToTiles((int)Math.ceil(sprite.calcDistance(sprite1)));
                 if( currentSpriteDistances[j]<= frog2plant.getInteractionDistance() && sprite!=sprite1 && 
-                        (sprite.isOfType(frog2plant.getInteractingTypes()[0]) || sprite.isOfType(frog2plant.getInteractingTypes()[1])) &&
-                        (sprite1.isOfType(frog2plant.getInteractingTypes()[0]) || sprite1.isOfType(frog2plant.getInteractingTypes()[1])))
+                        // one of each type: with two players, the players mustn't hunt each other
+                        ((sprite.isOfType(frog2plant.getInteractingTypes()[0]) && sprite1.isOfType(frog2plant.getInteractingTypes()[1])) ||
+                        (sprite.isOfType(frog2plant.getInteractingTypes()[1]) && sprite1.isOfType(frog2plant.getInteractingTypes()[0]))))
                 {
                     frog2plant.interact(sprite,sprite1,currentTime);
                 }
@@ -140,19 +572,9 @@ public class Level {
         }
     }
 
-    /**
-     * Passes the invocation to each of the sprites on this level, See {@link Sprite#processGameTick(long)}
-     * @param currentTime current game time
-     */
-    public void processGameTick(long currentTime){
-        if(mySprites!=null && !mySprites.isEmpty()){
-            mySprites.forEach(sprite -> sprite.processGameTick(currentTime));
-            calculateSpriteDistances(currentTime);
-        }
-    }
     private Tile[][] readMap(List<String> allLines) {
         ArrayList<Tile[]> levelHorizontals = allLines.stream().filter(line -> !(Tile.isTileLine(line) || isCommentLine(line) ||
-                isSpriteLine(line))).map(line->{
+                isSpriteLine(line) || isParallaxLine(line) || isLightingLine(line))).map(line->{
             Tile[] currentHorizontal = new Tile[line.length()];
             for(int i=0; i<line.length();i++){
                 currentHorizontal[i]=tiles.get(line.substring(i,i+1));
@@ -165,7 +587,7 @@ public class Level {
     private Map<String, Tile> readTiles(List<String> allLines) {
         Map<String,Tile> newTiles = new HashMap<>();
         allLines.stream().filter(Tile::isTileLine).forEach(line ->{
-            Tile tile = new Tile(line);
+            Tile tile = new Tile(line, importer);
             newTiles.put(tile.getSymbol(),tile);
         });
         if(newTiles.isEmpty()){
@@ -174,6 +596,65 @@ public class Level {
         return newTiles;
     }
 
+    private void readParallaxLayers(List<String> allLines) throws IOException {
+        List<ParallaxLayer> background = new ArrayList<>();
+        List<ParallaxLayer> foreground = new ArrayList<>();
+        for (String line : allLines) {
+            if (!isParallaxLine(line)) {
+                continue;
+            }
+            String[] definition = line.substring(PARALLAX_DESIGNATOR.length()).split(";");
+            if (definition.length < 2) {
+                throw new LevelBuildingException("Parallax layer definition is improperly formatted:" + line);
+            }
+            RenderLayer layer = (definition.length > 2) ? RenderLayer.valueOf(definition[2].trim()) :
+                    RenderLayer.BACKGROUND;
+            ParallaxLayer parallax = new ParallaxLayer(importer.read(new File(definition[0].trim()), false),
+                    Float.parseFloat(definition[1].trim()), importer);
+            (layer == RenderLayer.BACKGROUND ? background : foreground).add(parallax);
+        }
+        backgroundLayers = background;
+        foregroundLayers = foreground;
+        logger.debug("{} background and {} foreground parallax layers", background.size(), foreground.size());
+    }
+
+    private void readLighting(List<String> allLines) {
+        boolean found = false;
+        for (String line : allLines) {
+            if (!isLightingLine(line)) {
+                continue;
+            }
+            if (found) {
+                throw new LevelBuildingException("A level can have only one lighting definition:" + line);
+            }
+            found = true;
+            String[] definition = line.substring(LIGHTING_DESIGNATOR.length()).split(";");
+            if (definition.length < 3) {
+                throw new LevelBuildingException("Lighting definition is improperly formatted:" + line);
+            }
+            lighting = new LightingLayer(map[0].length, map.length, TILE_SIZE,
+                    Float.parseFloat(definition[1].trim()), Float.parseFloat(definition[2].trim()));
+            int radius = Integer.parseInt(definition[0].trim());
+            playerLights = new int[players.size()];
+            for (int i = 0; i < players.size(); i++) {
+                playerLights[i] = lighting.addLight(radius);
+            }
+        }
+    }
+
+    /**
+     * Moves the lights carried by the players to where the players are in the snapshot
+     */
+    private void moveLights(WorldSnapshot snapshot) {
+        if (lighting == null) {
+            return;
+        }
+        for (int i = 0; i < playerIndexes.length; i++) {
+            lighting.moveLight(playerLights[i], pixelsToTiles(snapshot.xs[playerIndexes[i]] + TILE_SIZE/2),
+                    pixelsToTiles(snapshot.ys[playerIndexes[i]] + TILE_SIZE/2));
+        }
+    }
+
     private List<Sprite> readSprites(List<String> allLines){
         List<Sprite> sprites = new ArrayList<>();
         allLines.stream().filter(Level::isSpriteLine).forEach(line ->
@@ -181,7 +662,7 @@ public class Level {
                     Sprite currentSprite = spriteProvider.get().configureFromFile(line.substring(line.indexOf(":") + 1));
                     sprites.add(currentSprite);
                     if (currentSprite.isOfType("PLAYER")) {
-                        player = currentSprite;
+                        players.add(currentSprite);
                     }
                 }
         );
@@ -207,35 +688,236 @@ public class Level {
      */
     public void draw(Graphics2D g, int screenWidth, int screenHeight)
     {
+        draw(g, screenWidth, screenHeight, null);
+    }
+
+    /**
+     Draws the level, showing only the visible part. If a tracker is passed, repaints only the regions it reports
+     as changed, otherwise repaints the whole screen. The level is laid out in logical pixels, the cameras see as much
+     of it as fits in their viewports at the importer's scale. The partial redraw applies to a single viewport only,
+     a split screen is repainted completely.
+     @param g the graphics to use
+     @param screenWidth width of the screen
+     @param screenHeight height of the screen
+     @param dirtyRegions the tracker for the partial redraw, null for the full redraw
+     */
+    public void draw(Graphics2D g, int screenWidth, int screenHeight, DirtyRegionTracker dirtyRegions)
+    {
+        draw(g, screenWidth, screenHeight, dirtyRegions, latestSnapshot(), 1);
+    }
+
+    /**
+     Draws a snapshot of the level between its previous tick and its tick: the sprites and the cameras following
+     them are placed part of the way from where they were at the previous tick to where they are at the snapshot's.
+     Reads nothing the simulation changes, only the snapshot.
+     @param g the graphics to use
+     @param screenWidth width of the screen
+     @param screenHeight height of the screen
+     @param dirtyRegions the tracker for the partial redraw, null for the full redraw
+     @param snapshot the snapshot to draw, see {@link #latestSnapshot()}, null to draw the map only
+     @param alpha how far the frame is from the previous tick to the snapshot's tick, 0 to 1
+     @see #draw(Graphics2D, int, int, DirtyRegionTracker)
+     */
+    public void draw(Graphics2D g, int screenWidth, int screenHeight, DirtyRegionTracker dirtyRegions,
+                     WorldSnapshot snapshot, float alpha)
+    {
+        float scale = importer.getScale();
+        if(snapshot != null && snapshot.sequence != appliedSequence){
+            appliedSequence = snapshot.sequence;
+            showTileFrames(snapshot);
+            moveLights(snapshot);
+            moveMarkers(snapshot);
+        }
+        layOutViewports(g, screenWidth, screenHeight, scale, snapshot, alpha);
+        if(snapshot != null){
+            submitSprites(snapshot, alpha);
+            particles.submit(snapshot.particleCount, snapshot.particleFrameIds, snapshot.particleXs,
+                    snapshot.particleYs, snapshot.particleLayers, snapshot.particleDepths, cameras);
+        }
+        RenderCommandList commands = renderCommands.swap();
+        lastFrameCulledSprites = culledSprites;
+        lastFrameDrawnSprites = drawnSprites;
+        totalCulledSprites += culledSprites;
+        totalDrawnSprites += drawnSprites;
+        culledSprites = 0;
+        drawnSprites = 0;
+        commands.sort();
+        DirtyRegionTracker tracker = (viewports.size() == 1 && rasterizer == null) ? dirtyRegions : null;
+        if(tracker == null){
+            // the changes are drawn anyway
+            tileMapCache.takeChanged(null, 0, 0);
+            if(lighting != null){
+                lighting.takeChanged(null, 0, 0);
+            }
+        }
+        for (Viewport viewport : viewports) {
+            drawViewport(g, viewport, commands, tracker, scale);
+        }
+        drawMinimap(g, screenWidth, scale);
+    }
+
+    /**
+     * Submits the frames of the sprites the cameras can see, between their previous and current positions
+     */
+    private void submitSprites(WorldSnapshot snapshot, float alpha){
+        for (int i = 0; i < snapshot.frameIds.length; i++) {
+            int frameId = snapshot.frameIds[i];
+            if(frameId < 0){
+                continue;
+            }
+            int x = interpolate(snapshot.previousXs[i], snapshot.xs[i], alpha);
+            int y = interpolate(snapshot.previousYs[i], snapshot.ys[i], alpha);
+            if(cull(x, y)){
+                renderCommands.submit(frameId, x, y, snapshot.layers[i], y + atlas.getFrame(frameId).getHeight());
+            }
+        }
+    }
+
+    private static int interpolate(int previous, int current, float alpha){
+        return previous + Math.round((current - previous) * alpha);
+    }
+
+    /**
+     * Splits the screen between the viewports side by side and points each viewport's camera at its player
+     */
+    private void layOutViewports(Graphics2D g, int screenWidth, int screenHeight, float scale,
+                                 WorldSnapshot snapshot, float alpha){
+        int count = viewports.size();
+        int width = (screenWidth - (count - 1) * VIEWPORT_DIVIDER) / count;
+        // all the viewports are the same size (so are their framebuffers), the dividers take what the rounding left
+        int leftover = screenWidth - count * width - (count - 1) * VIEWPORT_DIVIDER;
+        for (int i = 0; i < count; i++) {
+            Viewport viewport = viewports.get(i);
+            int x = i * (width + VIEWPORT_DIVIDER) + ((count > 1) ? leftover * i / (count - 1) : 0);
+            viewport.setBounds(x, 0, width, screenHeight, scale);
+            // the viewport (visible part of the level) keeps its player in the middle, if possible
+            if(snapshot == null || playerIndexes.length == 0){
+                viewport.getCamera().follow(TILE_SIZE/2, TILE_SIZE/2);
+            } else {
+                int player = playerIndexes[i];
+                viewport.getCamera().follow(
+                        interpolate(snapshot.previousXs[player], snapshot.xs[player], alpha) + TILE_SIZE/2,
+                        interpolate(snapshot.previousYs[player], snapshot.ys[player], alpha) + TILE_SIZE/2);
+            }
+            if(i > 0){
+                int previousRight = viewports.get(i - 1).getX() + width;
+                g.setColor(Color.black);
+                g.fillRect(previousRight, 0, x - previousRight, screenHeight);
+            }
+        }
+    }
+
+    /**
+     * Draws what a viewport's camera sees in the viewport
+     * @param dirtyRegions the tracker for the partial redraw, null for the full redraw
+     */
+    private void drawViewport(Graphics2D g, Viewport viewport, RenderCommandList commands,
+                              DirtyRegionTracker dirtyRegions, float scale){
+        Camera camera = viewport.getCamera();
+        AffineTransform screenTransform = g.getTransform();
+        Shape screenClip = g.getClip();
+        g.translate(viewport.getX(), viewport.getY());
+        if(viewports.size() > 1){
+            g.clipRect(0, 0, viewport.getWidth(), viewport.getHeight());
+        }
+        if(rasterizer != null){
+            rasterizer.render(g, camera, tileImages, TILE_SIZE, commands, atlas, scale);
+            // the rasterizer's tiles are opaque, only what goes over them is left to Java2D
+            g.translate(-Math.round(camera.getX() * scale), -Math.round(camera.getY() * scale));
+            if(parallaxShown){
+                for (ParallaxLayer layer : foregroundLayers) {
+                    layer.draw(g, camera);
+                }
+            }
+            if(lighting != null){
+                lighting.draw(g, camera, scale);
+            }
+            g.setTransform(screenTransform);
+            g.setClip(screenClip);
+            return;
+        }
+        // from here on everything is drawn in the map's coordinates, scaled
+        g.translate(-Math.round(camera.getX() * scale), -Math.round(camera.getY() * scale));
+        if(dirtyRegions == null){
+            drawRegion(g, camera, commands, camera.getX(), camera.getY(), camera.getWidth(), camera.getHeight(),
+                    scale);
+            g.setTransform(screenTransform);
+            g.setClip(screenClip);
+            return;
+        }
+        dirtyRegions.startFrame(camera.getX(), camera.getY());
+        // the animated tiles changed these parts of the map
+        tileMapCache.takeChanged(dirtyRegions, camera.getX(), camera.getY());
+        if(lighting != null){
+            // so is the light
+            lighting.takeChanged(dirtyRegions, camera.getX(), camera.getY());
+        }
+        for (int i = 0; i < commands.size(); i++) {
+            SpriteFrame frame = atlas.getFrame(commands.getFrameId(i));
+            dirtyRegions.addSprite(commands.getX(i) - camera.getX(), commands.getY(i) - camera.getY(),
+                    frame.getWidth(), frame.getHeight());
+        }
+        int regions = dirtyRegions.dirtyRegions(camera.getWidth(), camera.getHeight());
+        for (int i = 0; i < regions; i++) {
+            Rectangle region = dirtyRegions.dirtyRegion(i);
+            int left = region.x + camera.getX();
+            int top = region.y + camera.getY();
+            int scaledLeft = (int) Math.floor(left * scale);
+            int scaledTop = (int) Math.floor(top * scale);
+            g.setClip(scaledLeft, scaledTop, (int) Math.ceil((left + region.width) * scale) - scaledLeft,
+                    (int) Math.ceil((top + region.height) * scale) - scaledTop);
+            drawRegion(g, camera, commands, left, top, region.width, region.height, scale);
+        }
+        g.setTransform(screenTransform);
+        g.setClip(screenClip);
+    }
+
+    /**
+     * Draws the minimap, if there is one, in the screen's top right corner. It's opaque and drawn every frame, so
+     * the partial redraw doesn't need to track it.
+     */
+    private void drawMinimap(Graphics2D g, int screenWidth, float scale){
+        if(minimap == null){
+            return;
+        }
+        int margin = Math.round(MINIMAP_MARGIN * scale);
+        minimap.draw(g, screenWidth - margin - Math.round(minimap.getWidth() * scale), margin, scale);
+    }
+
+    /**
+     * Paints a part of the map: the background, the tiles and the sprites overlapping that part. The graphics is
+     * translated to the map's coordinates, scaled; the part is in logical pixels.
+     */
+    private void drawRegion(Graphics2D g, Camera camera, RenderCommandList commands, int left, int top, int width,
+                            int height, float scale){
         // otherwise it always paints the window the default color white, which generates blinking
         g.setColor(Color.black);
-        g.fillRect(0, 0, screenWidth, screenHeight);
-
-        /*
-         * The following block sets the viewport (visible part of the level) around the player. The player is placed
-         * in the middle of the viewport, if possible.
-         */
-        int leftSideOfTheViewport = player.getState().getCurrent().getX() - TILE_SIZE - screenWidth/2;
-        leftSideOfTheViewport = Math.max(leftSideOfTheViewport, 0);
-        leftSideOfTheViewport = Math.min(leftSideOfTheViewport,MAP_WIDTH-screenWidth); //so we don't go over right side
-        int offsetY = 0;
-        int firstTileX = pixelsToTiles(leftSideOfTheViewport);
-        int lastTileX = firstTileX + pixelsToTiles(screenWidth);
-
-        for (int y = 0; y < map.length; y++) {
-            for (int x = firstTileX; x <= lastTileX; x++) {
-                if (x < 0 || x >= map[0].length) continue;
-                map[y][x].draw(g, tilesToPixels(x) - leftSideOfTheViewport, tilesToPixels(y) + offsetY);
+        int scaledLeft = (int) Math.floor(left * scale);
+        int scaledTop = (int) Math.floor(top * scale);
+        g.fillRect(scaledLeft, scaledTop, (int) Math.ceil((left + width) * scale) - scaledLeft,
+                (int) Math.ceil((top + height) * scale) - scaledTop);
+        if (parallaxShown) {
+            for (ParallaxLayer layer : backgroundLayers) {
+                layer.draw(g, camera);
+            }
+        }
+        tileMapCache.draw(g, left, top, width, height);
+        for (int rank = 0; rank < commands.size(); rank++) {
+            int i = commands.getSorted(rank);
+            int x = commands.getX(i);
+            int y = commands.getY(i);
+            SpriteFrame image = atlas.getFrame(commands.getFrameId(i));
+            if (x < left + width && x + image.getWidth() > left && y < top + height && y + image.getHeight() > top) {
+                image.draw(g, x, y);
             }
         }
-        while(drawingQueue.peek()!=null){
-            ImageInfo currentImage = null;
-            try {
-                currentImage = drawingQueue.take();
-            } catch (InterruptedException e) {
-                logger.error("Retrieving an image from non-empty drawing queue was interrupted",e);
+        if (parallaxShown) {
+            for (ParallaxLayer layer : foregroundLayers) {
+                layer.draw(g, camera);
             }
-            g.drawImage(currentImage.getImage(),currentImage.getAbsoluteX()-leftSideOfTheViewport,currentImage.getAbsoluteY(),null);
+        }
+        if (lighting != null) {
+            lighting.draw(g, camera, scale);
         }
     }
     /**
@@ -249,6 +931,12 @@ public class Level {
     private static boolean isSpriteLine(String line){
         return line!=null && line.startsWith(SPRITE_DESIGNATOR);
     }
+    private static boolean isParallaxLine(String line){
+        return line!=null && line.startsWith(PARALLAX_DESIGNATOR);
+    }
+    private static boolean isLightingLine(String line){
+        return line!=null && line.startsWith(LIGHTING_DESIGNATOR);
+    }
 
 
 }
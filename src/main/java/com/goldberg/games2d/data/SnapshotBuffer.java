@@ -0,0 +1,97 @@
+package com.goldberg.games2d.data;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Passes {@link WorldSnapshot}s from the simulation thread to the drawing thread without locking, a triple buffer:
+ * the simulation fills the back snapshot while the drawing reads the front one, and the third one, in the middle,
+ * holds the latest published. Publishing swaps the back with the middle, taking the latest from the middle swaps
+ * it with the front; each is one atomic exchange, so neither side ever waits for the other. A snapshot published
+ * before the drawing took it is simply overwritten, the drawing always gets the newest.
+ * {@link #startWriting()} and {@link #publish()} belong to the simulation thread, {@link #latest()} and
+ * {@link #awaitFresh(long)} to the drawing thread. The drawing may sleep until a snapshot comes, publishing wakes it.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class SnapshotBuffer {
+    /**
+     * Set in the middle's index when it holds a snapshot the drawing hasn't taken yet
+     */
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+    private final WorldSnapshot[] snapshots;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+    private boolean published;
+    /**
+     * The drawing thread while it waits for a snapshot, null otherwise
+     */
+    private volatile Thread waiting;
+
+    /**
+     * @param sprites the number of sprites on the level
+     * @param animatedTiles the number of the animated tile types on the level
+     * @param particles the most particles alive at once
+     */
+    SnapshotBuffer(int sprites, int animatedTiles, int particles) {
+        snapshots = new WorldSnapshot[3];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = new WorldSnapshot(sprites, animatedTiles, particles);
+        }
+    }
+
+    /**
+     * @return the snapshot to fill, nobody else reads it until it's published
+     */
+    WorldSnapshot startWriting() {
+        return snapshots[back];
+    }
+
+    /**
+     * Makes the snapshot filled the latest one
+     */
+    void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+        Thread drawing = waiting;
+        if (drawing != null) {
+            LockSupport.unpark(drawing);
+        }
+    }
+
+    /**
+     * Sleeps until a snapshot the drawing hasn't taken yet is published, the timeout passes or the thread is
+     * interrupted
+     * @param timeoutNanos how long to wait at most
+     * @return true if there is a fresh snapshot to take
+     */
+    boolean awaitFresh(long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        waiting = Thread.currentThread();
+        try {
+            // published before the waiting thread was set or after, either way the loop sees it
+            while ((middle.get() & FRESH) == 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return true;
+        } finally {
+            waiting = null;
+        }
+    }
+
+    /**
+     * @return the latest published snapshot, valid until the next call, null if nothing was published yet
+     */
+    WorldSnapshot latest() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX;
+            published = true;
+        }
+        return published ? snapshots[front] : null;
+    }
+}
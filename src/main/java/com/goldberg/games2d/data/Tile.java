@@ -1,23 +1,35 @@
 package com.goldberg.games2d.data;
 
 import com.goldberg.games2d.exceptions.LevelBuildingException;
+import com.goldberg.games2d.graphics.AnimationTimeline;
+import com.goldberg.games2d.hardware.ImageImporter;
+import com.goldberg.games2d.hardware.ImportedImage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
 
 /**
  * Defines a tile. Can read itself from an image file, has a type in level.
+ * An animated tile is defined by an {@link com.goldberg.games2d.gamelogic.Animation} descriptor instead (a file
+ * ending with .txt) with one more key, frame.period - how long a cycle takes in ms. The frame file names are relative
+ * to the descriptor. All the tiles of the type show the same frame: the simulation finds it for each tick with
+ * {@link #frameAt(long)}, the drawing shows it with {@link #showFrame(int)}.
  * @author antonymouse
  * @since 0.0
  */
 public class Tile {
     public static final char TILE_DELIMITER = ':';
+    private static final String ANIMATED_TILE_EXTENSION = ".txt";
+    private static final String FRAME_PERIOD_KEY = "frame.period";
     /**
      * All tiles within a level must be the same size
      */
@@ -32,7 +44,18 @@ public class Tile {
         return line!=null && line.length()>2 && line.charAt(1)== TILE_DELIMITER;
     }
     private final String symbol;
-    private final BufferedImage image;
+    private final ImportedImage[] frames;
+    /**
+     * The average color of each frame, RGB, see {@link #getAverageColor()}
+     */
+    private final int[] averageColors;
+    /**
+     * null if the tile isn't animated
+     */
+    private final AnimationTimeline timeline;
+    private final long period;
+    // the frame shown, set by the drawing thread, read by the tile map prewarm thread too
+    private volatile int currentFrame;
     private static final Logger logger = LogManager.getLogger(Tile.class);
 
     /**
@@ -43,23 +66,125 @@ public class Tile {
         return symbol;
     }
 
-    public Tile(String tileDefinitionString){
+    /**
+     * @param tileDefinitionString symbol:image file or symbol:animation descriptor
+     * @param importer converts the image for the display, tiles are imported as opaque
+     */
+    public Tile(String tileDefinitionString, ImageImporter importer){
         if(!isTileLine(tileDefinitionString)){
             throw new LevelBuildingException("Tile definition string is improperly formatted:"+tileDefinitionString);
         }
         symbol=tileDefinitionString.substring(0,1);
+        String file = tileDefinitionString.substring(2);
         try {
-            image = ImageIO.read(new File(tileDefinitionString.substring(2)));
-            TILE_SIZE = image.getHeight();
-            logger.debug("Loaded image from {} size {}",tileDefinitionString.substring(2),TILE_SIZE);
+            if(file.endsWith(ANIMATED_TILE_EXTENSION)){
+                Properties descriptor = new Properties();
+                try (InputStream in = Files.newInputStream(Path.of(file))) {
+                    descriptor.load(in);
+                }
+                timeline = new AnimationTimeline(descriptor.getProperty(AnimationTimeline.FRAMES_DURATION_KEY));
+                period = Long.parseLong(descriptor.getProperty(FRAME_PERIOD_KEY).trim());
+                if(period <= 0){
+                    throw new LevelBuildingException("Animated tile's period must be positive:"+file);
+                }
+                String frameName = new File(new File(file).getParentFile(),
+                        descriptor.getProperty(AnimationTimeline.FRAME_NAME_KEY).trim()).getPath();
+                frames = new ImportedImage[timeline.size()];
+                for (int i = 0; i < frames.length; i++) {
+                    frames[i] = importer.read(new File(AnimationTimeline.frameFileName(frameName, i)), true);
+                }
+            } else {
+                timeline = null;
+                period = 0;
+                frames = new ImportedImage[]{importer.read(new File(file), true)};
+            }
+            averageColors = new int[frames.length];
+            for (int i = 0; i < frames.length; i++) {
+                averageColors[i] = averageColor(frames[i].getSource());
+            }
+            TILE_SIZE = frames[0].getHeight();
+            logger.debug("Loaded {} frames from {} size {}",frames.length,file,TILE_SIZE);
         } catch (IOException e) {
-            throw new LevelBuildingException("unable to load image:"+tileDefinitionString.substring(2));
+            throw new LevelBuildingException("unable to load image:"+file);
         }
 //        image = new ImageIcon(tileDefinitionString.substring(2)).getImage();
 //        logger.debug("loaded image {}, width {} height {}",tileDefinitionString.substring(2),
 //                image.getWidth(null),image.getHeight(null));
     }
 
+    /**
+     * @return the tile's image, the current frame if it's animated
+     */
+    public ImportedImage getImage() {
+        return frames[currentFrame];
+    }
+
+    /**
+     * @return the average color of the tile's image (the current frame if it's animated), RGB
+     */
+    public int getAverageColor() {
+        return averageColors[currentFrame];
+    }
+
+    private static int averageColor(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        long red = 0, green = 0, blue = 0;
+        for (int pixel : pixels) {
+            red += (pixel >> 16) & 0xFF;
+            green += (pixel >> 8) & 0xFF;
+            blue += pixel & 0xFF;
+        }
+        int count = Math.max(pixels.length, 1);
+        return (int) (red / count) << 16 | (int) (green / count) << 8 | (int) (blue / count);
+    }
+
+    /**
+     * @return true if the tile's image changes over time
+     */
+    public boolean isAnimated() {
+        return timeline != null;
+    }
+
+    /**
+     * @param currentTime current game time
+     * @return the frame an animated tile shows at the given time, 0 for a static tile
+     */
+    public int frameAt(long currentTime) {
+        if(timeline == null){
+            return 0;
+        }
+        return timeline.frameAt((float)Math.floorMod(currentTime, period) / period);
+    }
+
+    /**
+     * Moves an animated tile to a frame, see {@link #frameAt(long)}
+     * @param frame the frame's index
+     * @return true if the frame changed
+     */
+    public boolean showFrame(int frame) {
+        if(frame == currentFrame){
+            return false;
+        }
+        currentFrame = frame;
+        return true;
+    }
+
+    /**
+     * @param currentTime current game time
+     * @return when an animated tile moves to its next frame, Long.MAX_VALUE for a static tile
+     */
+    public long nextFrameAt(long currentTime) {
+        if(timeline == null){
+            return Long.MAX_VALUE;
+        }
+        long cycleStart = currentTime - Math.floorMod(currentTime, period);
+        // the frame lasts up to and including its end point
+        long next = cycleStart + (long) (timeline.endOf(frameAt(currentTime)) * period) + 1;
+        return Math.max(next, currentTime + 1);
+    }
+
     /**
      * Draws the tile's image using tile's internal knowledge (i.e. if the tile needs to do something special)
      * @param g the graphics to use
@@ -67,7 +192,7 @@ public class Tile {
      * @param y screen coordinate y to place the tile
      */
     public void draw(@NotNull Graphics2D g, int x, int y){
-        g.drawImage(image,x,y,null);
+        frames[currentFrame].draw(g,x,y);
 //        System.out.println("Drawing image "+symbol+" at "+x+" "+y);
     }
 }
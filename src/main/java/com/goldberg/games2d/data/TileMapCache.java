@@ -0,0 +1,297 @@
+package com.goldberg.games2d.data;
+
+import com.goldberg.games2d.graphics.DirtyRegionTracker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the level's map pre-rendered in fixed-size chunks, so a frame blits a handful of big images instead of
+ * every visible tile. The map doesn't change, so each chunk is rendered from the tiles only once into a master
+ * image. If the display supports it, the master is also copied into an accelerated {@link VolatileImage}, which
+ * gets restored from the master whenever the video memory content is lost.
+ * The chunks are kept at the screen's scale, like the tiles they are made of.
+ * Animated tiles are the exception: when one of them moves to another frame, only the chunks containing it are
+ * invalidated, and they repaint just their animated cells before they are blitted next time.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class TileMapCache {
+    /**
+     * Width and height of a chunk, in tiles
+     */
+    public static final int CHUNK_TILES = 8;
+    /**
+     * How many times we try to blit a volatile chunk which keeps losing its content before giving up on this frame
+     */
+    private static final int MAX_RESTORE_ATTEMPTS = 3;
+    private static final Logger logger = LogManager.getLogger();
+    private final Tile[][] map;
+    private final int tileSize;
+    private final int chunkSize;
+    private final float scale;
+    private final Chunk[][] chunks;
+    /**
+     * The chunks containing each animated tile
+     */
+    private final Map<Tile, List<Chunk>> chunksByTile = new HashMap<>();
+    /**
+     * Chunks invalidated since the last {@link #takeChanged(DirtyRegionTracker, int, int)}
+     */
+    private final List<Chunk> changed = new ArrayList<>();
+    /**
+     * null if there is no display (headless), the chunks stay in plain images then
+     */
+    private final GraphicsConfiguration configuration;
+
+    /**
+     * @param map the level's map, y first
+     * @param tileSize size of all the tiles in pixels
+     * @param configuration the configuration to create images compatible with, null if there is no display
+     * @param scale screen pixels per map pixel, the scale the tiles' images are converted for
+     */
+    public TileMapCache(@NotNull Tile[][] map, int tileSize, GraphicsConfiguration configuration, float scale) {
+        this.map = map;
+        this.scale = scale;
+        this.tileSize = tileSize;
+        this.chunkSize = CHUNK_TILES * tileSize;
+        this.configuration = configuration;
+        int chunksY = (map.length + CHUNK_TILES - 1) / CHUNK_TILES;
+        int chunksX = (map[0].length + CHUNK_TILES - 1) / CHUNK_TILES;
+        chunks = new Chunk[chunksY][chunksX];
+        for (int y = 0; y < chunksY; y++) {
+            for (int x = 0; x < chunksX; x++) {
+                Chunk chunk = new Chunk(x, y);
+                chunks[y][x] = chunk;
+                chunk.animatedTiles.forEach(tile ->
+                        chunksByTile.computeIfAbsent(tile, key -> new ArrayList<>()).add(chunk));
+            }
+        }
+        logger.debug("tile map cache of {}x{} chunks, {} pixels each", chunksX, chunksY, chunkSize);
+    }
+
+    /**
+     * Renders all the chunks on a background thread, so the first frames don't have to. A chunk requested by
+     * {@link #draw(Graphics2D, int, int, int, int)} before its turn comes is simply rendered by the caller.
+     */
+    public void prewarm() {
+        ExecutorService prewarmer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tile-map-prewarm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Chunk[] row : chunks) {
+            for (Chunk chunk : row) {
+                prewarmer.execute(chunk::master);
+            }
+        }
+        // lets the queued chunks finish, the thread goes away after that
+        prewarmer.shutdown();
+    }
+
+    /**
+     * Invalidates the chunks containing an animated tile which moved to another frame
+     * @param tile the tile
+     */
+    public void invalidate(@NotNull Tile tile) {
+        for (Chunk chunk : chunksByTile.getOrDefault(tile, List.of())) {
+            if (!chunk.stale) {
+                chunk.stale = true;
+                changed.add(chunk);
+            }
+        }
+    }
+
+    /**
+     * Reports the chunks invalidated since the last call to the tracker as changed in the current frame, and forgets
+     * them.
+     * @param tracker the tracker to report to, null if nobody needs to know
+     * @param viewportX left side of the viewport in map pixels
+     * @param viewportY top side of the viewport in map pixels
+     */
+    public void takeChanged(DirtyRegionTracker tracker, int viewportX, int viewportY) {
+        if (tracker != null) {
+            for (Chunk chunk : changed) {
+                tracker.addSprite(chunk.firstTileX * tileSize - viewportX, chunk.firstTileY * tileSize - viewportY,
+                        chunk.tilesWide * tileSize, chunk.tilesHigh * tileSize);
+            }
+        }
+        changed.clear();
+    }
+
+    /**
+     * Blits the chunks overlapping a part of the map. The graphics is expected to be translated to the map's
+     * coordinates (in screen pixels), so the chunks are drawn at their scaled map positions.
+     * @param g the graphics to use
+     * @param left left side of the part in map pixels
+     * @param top top side of the part in map pixels
+     * @param width width of the part in pixels
+     * @param height height of the part in pixels
+     */
+    public void draw(@NotNull Graphics2D g, int left, int top, int width, int height) {
+        int firstChunkX = Math.max(Math.floorDiv(left, chunkSize), 0);
+        int firstChunkY = Math.max(Math.floorDiv(top, chunkSize), 0);
+        int lastChunkX = Math.min(Math.floorDiv(left + width - 1, chunkSize), chunks[0].length - 1);
+        int lastChunkY = Math.min(Math.floorDiv(top + height - 1, chunkSize), chunks.length - 1);
+        for (int y = firstChunkY; y <= lastChunkY; y++) {
+            for (int x = firstChunkX; x <= lastChunkX; x++) {
+                chunks[y][x].draw(g, Math.round(x * chunkSize * scale), Math.round(y * chunkSize * scale));
+            }
+        }
+    }
+
+    /**
+     * One square piece of the map, CHUNK_TILES by CHUNK_TILES tiles (less at the right and bottom edges)
+     */
+    private class Chunk {
+        private final int firstTileX, firstTileY, tilesWide, tilesHigh;
+        private final Set<Tile> animatedTiles = new HashSet<>();
+        private volatile BufferedImage master;
+        // touched by the drawing thread only
+        private VolatileImage accelerated;
+        private boolean stale;
+
+        Chunk(int chunkX, int chunkY) {
+            firstTileX = chunkX * CHUNK_TILES;
+            firstTileY = chunkY * CHUNK_TILES;
+            tilesWide = Math.min(CHUNK_TILES, map[0].length - firstTileX);
+            tilesHigh = Math.min(CHUNK_TILES, map.length - firstTileY);
+            for (int y = 0; y < tilesHigh; y++) {
+                for (int x = 0; x < tilesWide; x++) {
+                    Tile tile = map[firstTileY + y][firstTileX + x];
+                    if (tile.isAnimated()) {
+                        animatedTiles.add(tile);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the chunk rendered from its tiles, rendering it if nobody did it yet
+         */
+        BufferedImage master() {
+            BufferedImage result = master;
+            if (result == null) {
+                synchronized (this) {
+                    result = master;
+                    if (result == null) {
+                        result = render();
+                        master = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private BufferedImage render() {
+            int width = scaledWidth();
+            int height = scaledHeight();
+            BufferedImage image = (configuration != null) ?
+                    configuration.createCompatibleImage(width, height, Transparency.OPAQUE) :
+                    new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = createGraphics(image);
+            try {
+                for (int y = 0; y < tilesHigh; y++) {
+                    for (int x = 0; x < tilesWide; x++) {
+                        map[firstTileY + y][firstTileX + x].draw(g, (firstTileX + x) * tileSize,
+                                (firstTileY + y) * tileSize);
+                    }
+                }
+            } finally {
+                g.dispose();
+            }
+            return image;
+        }
+
+        /**
+         * @return graphics drawing on the chunk's image at the map positions, so the tiles land where they would be
+         * scaled on the screen
+         */
+        private Graphics2D createGraphics(BufferedImage image) {
+            Graphics2D g = image.createGraphics();
+            g.translate(-Math.round(firstTileX * tileSize * scale), -Math.round(firstTileY * tileSize * scale));
+            return g;
+        }
+
+        /**
+         * Repaints the animated cells of the master with their current frames
+         */
+        private void refresh() {
+            BufferedImage image = master();
+            synchronized (this) {
+                Graphics2D g = createGraphics(image);
+                try {
+                    for (int y = 0; y < tilesHigh; y++) {
+                        for (int x = 0; x < tilesWide; x++) {
+                            Tile tile = map[firstTileY + y][firstTileX + x];
+                            if (tile.isAnimated()) {
+                                tile.draw(g, (firstTileX + x) * tileSize, (firstTileY + y) * tileSize);
+                            }
+                        }
+                    }
+                } finally {
+                    g.dispose();
+                }
+            }
+        }
+
+        void draw(Graphics2D g, int x, int y) {
+            if (stale) {
+                refresh();
+                stale = false;
+                if (accelerated != null) {
+                    restore();
+                }
+            }
+            if (configuration == null) {
+                g.drawImage(master(), x, y, null);
+                return;
+            }
+            int attempts = 0;
+            do {
+                int status = (accelerated == null) ? VolatileImage.IMAGE_INCOMPATIBLE :
+                        accelerated.validate(configuration);
+                if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                    if (accelerated != null) {
+                        accelerated.flush();
+                    }
+                    accelerated = configuration.createCompatibleVolatileImage(scaledWidth(), scaledHeight(),
+                            Transparency.OPAQUE);
+                    restore();
+                } else if (status == VolatileImage.IMAGE_RESTORED) {
+                    logger.debug("restoring chunk at tile {},{}", firstTileX, firstTileY);
+                    restore();
+                }
+                g.drawImage(accelerated, x, y, null);
+            } while (accelerated.contentsLost() && ++attempts < MAX_RESTORE_ATTEMPTS);
+        }
+
+        /**
+         * @return the chunk's width on the screen, up to where the next chunk starts
+         */
+        private int scaledWidth() {
+            return Math.round((firstTileX + tilesWide) * tileSize * scale) - Math.round(firstTileX * tileSize * scale);
+        }
+
+        private int scaledHeight() {
+            return Math.round((firstTileY + tilesHigh) * tileSize * scale) - Math.round(firstTileY * tileSize * scale);
+        }
+
+        private void restore() {
+            Graphics2D g = accelerated.createGraphics();
+            try {
+                g.drawImage(master(), 0, 0, null);
+            } finally {
+                g.dispose();
+            }
+        }
+    }
+}
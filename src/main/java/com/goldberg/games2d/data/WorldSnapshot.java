@@ -0,0 +1,88 @@
+package com.goldberg.games2d.data;
+
+/**
+ * What the drawing needs to know about one simulation tick: where each sprite was at the previous tick and is now,
+ * the frame it shows, the frames of the animated tiles and the live particles. Filled by the simulation thread
+ * with {@link Level#publish(long)}, read by the drawing thread. The snapshots are pooled in a
+ * {@link SnapshotBuffer}: a snapshot doesn't change from the moment it's published until the drawing gives it
+ * back, so the drawing reads it without locking.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class WorldSnapshot {
+    long sequence;
+    /**
+     * The sequence of the latest snapshot which looked different from the one before it
+     */
+    long lastChange;
+    /**
+     * True if nothing moves in this tick: it looks the same as the previous one, whatever the frame's interpolation
+     */
+    boolean still;
+    long simulatedAt;
+    long tickTime, previousTickTime;
+    // the sprites, in the level's order; a frame id of -1 isn't drawn
+    final int[] previousXs, previousYs, xs, ys, frameIds, layers;
+    /**
+     * The frame of each animated tile type, in the level's order
+     */
+    final int[] tileFrames;
+    int particleCount;
+    final int[] particleFrameIds, particleXs, particleYs, particleLayers, particleDepths;
+
+    /**
+     * @param sprites the number of sprites on the level
+     * @param animatedTiles the number of the animated tile types on the level
+     * @param particles the most particles alive at once
+     */
+    WorldSnapshot(int sprites, int animatedTiles, int particles) {
+        previousXs = new int[sprites];
+        previousYs = new int[sprites];
+        xs = new int[sprites];
+        ys = new int[sprites];
+        frameIds = new int[sprites];
+        layers = new int[sprites];
+        tileFrames = new int[animatedTiles];
+        particleFrameIds = new int[particles];
+        particleXs = new int[particles];
+        particleYs = new int[particles];
+        particleLayers = new int[particles];
+        particleDepths = new int[particles];
+    }
+
+    /**
+     * @return the tick's number, from 1
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the sequence of the latest snapshot which looked different from the one before it
+     */
+    public long getLastChange() {
+        return lastChange;
+    }
+
+    /**
+     * @return true if the tick looks the same as the previous one
+     */
+    public boolean isStill() {
+        return still;
+    }
+
+    /**
+     * @return when the tick was simulated on the game loop's clock,
+     * {@link com.goldberg.games2d.hardware.GameClock#nanoTime()}
+     */
+    public long getSimulatedAt() {
+        return simulatedAt;
+    }
+
+    /**
+     * @return the tick's game time
+     */
+    public long getTickTime() {
+        return tickTime;
+    }
+}
@@ -0,0 +1,55 @@
+package com.goldberg.games2d.gamelogic;
+
+import com.goldberg.games2d.graphics.TextureAtlas;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads each {@link Animation} once for the whole game, so all the sprites using the same descriptor share it (and
+ * share the frame it resolves in a tick).
+ * @author antonymouse
+ * @since 0.3
+ */
+@Singleton
+public class AnimationLibrary {
+    private static final Logger logger = LogManager.getLogger();
+    private final String dataDirPath;
+    private final TextureAtlas atlas;
+    private final Map<Path, Animation> animations = new HashMap<>();
+
+    @Inject
+    public AnimationLibrary(@Named("DataDirectoryPath") String dataDirPath, TextureAtlas atlas) {
+        this.dataDirPath = dataDirPath;
+        this.atlas = atlas;
+    }
+
+    /**
+     * @param animationDescriptor path of the animation's descriptor relative to the data directory
+     * @return the animation, loaded if nobody asked for it yet
+     */
+    public synchronized Animation get(String animationDescriptor) {
+        Path path = FileSystems.getDefault().getPath(dataDirPath, animationDescriptor).normalize();
+        Animation animation = animations.get(path);
+        if (animation == null) {
+            logger.debug("creating new animation for path {}", path);
+            animation = new Animation(dataDirPath, animationDescriptor, atlas);
+            animations.put(path, animation);
+        }
+        return animation;
+    }
+
+    /**
+     * @return how many different animations were loaded
+     */
+    public synchronized int size() {
+        return animations.size();
+    }
+}
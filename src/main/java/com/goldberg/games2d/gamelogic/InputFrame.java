@@ -0,0 +1,86 @@
+package com.goldberg.games2d.gamelogic;
+
+import java.awt.event.KeyEvent;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The keyboard input of one simulation tick: the keys pressed since the last tick and the keys held down. The game
+ * loop drains the key events into it, the level consumes it once per tick, so the sprites and the interactions run
+ * once per tick however many events came; a key pressed several times (e.g. auto-repeated) is pressed once in the
+ * tick. A release only lets go of the key, nothing reacts to the release itself.
+ * Not thread-safe, belongs to the simulation.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class InputFrame {
+    /**
+     * The keys pressed in the tick, in the order they came
+     */
+    private int[] pressed = new int[8];
+    private int pressedCount;
+    private final BitSet held = new BitSet();
+
+    /**
+     * Adds a key event to the tick
+     * @param message the event as {@link com.goldberg.games2d.hardware.KeyPublisher} queues it: the key code and
+     *                KeyEvent.KEY_PRESSED or KeyEvent.KEY_RELEASED
+     */
+    public void add(int[] message) {
+        int key = message[0];
+        if (message[1] == KeyEvent.KEY_PRESSED) {
+            held.set(key);
+            if (!wasPressed(key)) {
+                if (pressedCount == pressed.length) {
+                    pressed = Arrays.copyOf(pressed, pressedCount * 2);
+                }
+                pressed[pressedCount++] = key;
+            }
+        } else if (message[1] == KeyEvent.KEY_RELEASED) {
+            held.clear(key);
+        }
+    }
+
+    /**
+     * @return how many different keys were pressed in the tick
+     */
+    public int getPressedCount() {
+        return pressedCount;
+    }
+
+    /**
+     * @param index from 0 to {@link #getPressedCount()}, in the order the keys were pressed
+     * @return the key code
+     */
+    public int getPressed(int index) {
+        return pressed[index];
+    }
+
+    /**
+     * @param key the key code
+     * @return true if the key was pressed in the tick
+     */
+    public boolean wasPressed(int key) {
+        for (int i = 0; i < pressedCount; i++) {
+            if (pressed[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key the key code
+     * @return true if the key is down at the end of the tick, pressed in this tick or before
+     */
+    public boolean isHeld(int key) {
+        return held.get(key);
+    }
+
+    /**
+     * Forgets the tick's presses, the keys held stay held
+     */
+    public void endTick() {
+        pressedCount = 0;
+    }
+}
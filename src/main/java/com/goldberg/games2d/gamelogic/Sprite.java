@@ -4,17 +4,21 @@ import com.goldberg.games2d.data.Coordinates;
 import com.goldberg.games2d.data.Level;
 import com.goldberg.games2d.exceptions.AnimationException;
 import com.goldberg.games2d.exceptions.LevelBuildingException;
-import com.goldberg.games2d.hardware.ImageInfo;
-import com.google.inject.name.Named;
+import com.goldberg.games2d.graphics.ParticleEmitter;
+import com.goldberg.games2d.graphics.ParticleSystem;
+import com.goldberg.games2d.graphics.RenderLayer;
+import com.goldberg.games2d.graphics.TextureAtlas;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.awt.event.KeyEvent;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
 
 /**
  * The class is a container for all {@link Animation}s for one character. Animations are stateless, this class is 
@@ -27,6 +31,10 @@ import java.util.concurrent.BlockingQueue;
  * VELOCITY - move velocity
  * START_AT initial position on a level
  * MAX_MOVE max distance of a single move in any direction
+ * LAYER the {@link RenderLayer} to draw the sprite in, SPRITES by default
+ * EMITTER_command particles emitted from the sprite's centre while the command runs:
+ * image file;burst;speed;lifetime[;rate[;layer]], see {@link ParticleEmitter}. The burst is emitted when the
+ * command starts, the rate (per second) is a steady stream while it lasts.
  * @author antonymouse
  * @since 0.0
  */
@@ -37,7 +45,14 @@ public class Sprite {
     // these 2 are required at the configuration only
     private final  Map<String, BehaviorStyle> availableBehaviors;
     private final String dataDirPath;
-    private final BlockingQueue<ImageInfo> levelDrawingQueue;
+    private final AnimationLibrary animationLibrary;
+    private final TextureAtlas atlas;
+    private final ParticleSystem particles;
+    private final Map<Command,ParticleEmitter> emitters = new HashMap<>();
+    /**
+     * The time the current command's particle stream is emitted until, MIN_VALUE if it's just starting
+     */
+    private long streamedUntil = Long.MIN_VALUE;
     private static final Logger logger = LogManager.getLogger();
 
     /**
@@ -48,19 +63,31 @@ public class Sprite {
     private static final String MAX_DISTANCE_MOVE_KEY = "MAX_MOVE"; // max distance in tiles
     private static final String MOVEMENT_STYLE_KEY = "BEHAVIOR";
     private static final String COMMAND_KEY = "COMMAND";
+    private static final String LAYER_KEY = "LAYER";
+    private static final String EMITTER_KEY = "EMITTER";
     private final CommandSet myCommands;
+    /**
+     * The sprite's commands started by a key, in no particular order
+     */
+    private KeyCommand[] keyCommands = new KeyCommand[0];
     private float velocity;
+    private RenderLayer layer = RenderLayer.SPRITES;
 
     /**
      * 
      * @param dataDirPath  path to the folder with all the data files
      * @param copy sprite-specific copy of the command set
      * @param availableBehaviors all behaviors on this level
+     * @param animationLibrary the animations shared by all the sprites
+     * @param atlas keeps the particles' frames
+     * @param particles where the sprite's particles live
      */
     public Sprite(String dataDirPath, CommandSet copy, Map<String, BehaviorStyle> availableBehaviors,
-                  @Named("LevelDrawingQueue")BlockingQueue<ImageInfo> levelDrawingQueue) {
+                  AnimationLibrary animationLibrary, TextureAtlas atlas, ParticleSystem particles) {
         this.dataDirPath = dataDirPath;
-        this.levelDrawingQueue = levelDrawingQueue;
+        this.animationLibrary = animationLibrary;
+        this.atlas = atlas;
+        this.particles = particles;
         animations = new HashMap<>();
         actionTargets = new HashMap<>();
         logger.debug("available behaviors {} in the system",availableBehaviors.size());
@@ -88,6 +115,10 @@ public class Sprite {
         long completion_time;
         long start_time;
         Coordinates start, end, current;
+        /**
+         * Where the sprite was when the current tick started, the frames are drawn between there and current
+         */
+        Coordinates previous;
         long stateChangedAt;
         Animation currentAnimation;
 
@@ -97,10 +128,12 @@ public class Sprite {
          * @param startingY initial coordinate
          */
         public State(int startingX, int startingY) {
-            start = new Coordinates(0,0);
-            end = new Coordinates(0,0);
+            // standing still at the starting point until the first move
+            start = new Coordinates(startingX,startingY);
+            end = new Coordinates(startingX,startingY);
             energyLevel = 100; // make it configurable, when needed. When falls to 0, character dies
             current = new Coordinates(startingX,startingY);
+            previous = new Coordinates(startingX,startingY);
         }
 
         /**
@@ -108,12 +141,18 @@ public class Sprite {
          * @param currentCommand the command to set
          */
         public void setCurrentCommand(Command currentCommand) {
+            Command previous = this.currentCommand;
             this.currentCommand = currentCommand;
             currentAnimation = animations.get(this.currentCommand);
+            ParticleEmitter emitter = emitters.get(currentCommand);
+            if(emitter != null && previous != currentCommand && currentAnimation != null){
+                emitter.start(particles, current.getX() + currentAnimation.getWidth()/2,
+                        current.getY() + currentAnimation.getHeight()/2);
+                streamedUntil = Long.MIN_VALUE;
+            }
         }
         public void setCurrentCommand(String currentCommand) {
-            this.currentCommand = myCommands.byName(currentCommand);
-            currentAnimation = animations.get(this.currentCommand);
+            setCurrentCommand(myCommands.byName(currentCommand));
         }
 
         /**
@@ -140,6 +179,13 @@ public class Sprite {
         public Coordinates getCurrent(){
             return current;
         }
+
+        /**
+         * @return the position of the Sprite when the current tick started
+         */
+        public Coordinates getPrevious(){
+            return previous;
+        }
     }
 
     private State state;
@@ -155,10 +201,10 @@ public class Sprite {
      */
     public Sprite configureFromFile(String file) {
         Properties descriptor = new Properties();
-        // let's reuse the animations if they are used for more than 1 key
-        HashMap<Path, Animation> usedAnimations = new HashMap<>();
         Path spriteDescriptor = FileSystems.getDefault().getPath(dataDirPath+file);
         int startingX=0,startingY=0;
+        // resolved once all the commands are known
+        Map<String,String> emitterDefinitions = new HashMap<>();
         try {
             descriptor.load(Files.newInputStream(spriteDescriptor));
             logger.debug("value for STAY is  >{}<", descriptor.get("STAY"));
@@ -170,6 +216,8 @@ public class Sprite {
                     String[] sCoords = descriptor.getProperty(STARTING_COORDINATES_KEY).split(";");
                     startingX = Integer.parseInt(sCoords[0]);
                     startingY = Integer.parseInt(sCoords[1]);
+                } else if (LAYER_KEY.compareTo(keyName) == 0) {
+                    layer = RenderLayer.valueOf(descriptor.getProperty(LAYER_KEY).trim());
                 } else if (MAX_DISTANCE_MOVE_KEY.compareTo(keyName) == 0) {
                     maxMoveDistance = Float.parseFloat(descriptor.getProperty(MAX_DISTANCE_MOVE_KEY)); // int tiles
                 } else if (keyName.startsWith(COMMAND_KEY)){
@@ -181,6 +229,8 @@ public class Sprite {
                     myCommands.addCommand(
                             CommandFactory.processCommandDescription(keyName.substring(COMMAND_KEY.length()+1)
                                     ,descriptor.getProperty(keyName)));
+                } else if (keyName.startsWith(EMITTER_KEY)) {
+                    emitterDefinitions.put(keyName.substring(EMITTER_KEY.length()+1), descriptor.getProperty(keyName));
                 } else if (keyName.startsWith(MOVEMENT_STYLE_KEY)) {
                     logger.debug("Looking for a behavior by name {}",descriptor.getProperty(keyName));
                     BehaviorStyle currentBehavior = availableBehaviors.get(descriptor.getProperty(keyName));
@@ -194,18 +244,22 @@ public class Sprite {
                 } else {
                     String animationPath = descriptor.getProperty(keyName).split(";")[0];
                     String actionTarget = descriptor.getProperty(keyName).split(";")[1];
-                    Path currentPath = FileSystems.getDefault().getPath(dataDirPath,animationPath);
                     logger.debug("Loading animation for key {}",keyName);
-                    Animation currentAnimation = usedAnimations.get(currentPath);
-                    if (currentAnimation == null) {
-                        logger.debug("creating new animation for path {}",currentPath);
-                        currentAnimation = new Animation(dataDirPath, animationPath, levelDrawingQueue);
-                        usedAnimations.put(currentPath, currentAnimation);
-                    }
+                    // shared with any other key or sprite using the same descriptor
+                    Animation currentAnimation = animationLibrary.get(animationPath);
                     animations.put(myCommands.byName(keyName), currentAnimation);
                     actionTargets.put(myCommands.byName(keyName),actionTarget);
                 }
             }
+            for (Map.Entry<String,String> emitter : emitterDefinitions.entrySet()) {
+                Command command = myCommands.byName(emitter.getKey());
+                if(command == null){
+                    throw new LevelBuildingException("Emitter for an unknown command "+emitter.getKey());
+                }
+                emitters.put(command, parseEmitter(emitter.getValue()));
+            }
+            keyCommands = actionTargets.keySet().stream().filter(command -> command instanceof KeyCommand)
+                    .toArray(KeyCommand[]::new);
         } catch (Throwable e) {
             throw new AnimationException("Unable to load sprite's description from " + spriteDescriptor, e);
         }
@@ -218,83 +272,131 @@ public class Sprite {
             logger.debug("initialized a sprite with velocity {}, max distance {} and {} animations, " +
                             "starting point {},{}",velocity,
                     maxMoveDistance, animations.size(),startingX,startingY);
-            // todo this HAS to change for more than one plant or any other setup where more than one instance
-            //      can have the same behavior
             myBehaviors.forEach(behavior-> behavior.initialize(state,velocity,myCommands));
         }
         return this;
     }
     
+    private ParticleEmitter parseEmitter(String definition) throws IOException {
+        String[] parts = definition.split(";");
+        if(parts.length < 4){
+            throw new LevelBuildingException("Emitter definition is improperly formatted:"+definition);
+        }
+        String imageFile = dataDirPath + parts[0].trim();
+        BufferedImage image = ImageIO.read(new File(imageFile));
+        if(image == null){
+            throw new IOException("Unknown image format of "+imageFile);
+        }
+        float rate = (parts.length > 4) ? Float.parseFloat(parts[4].trim()) : 0;
+        RenderLayer emitterLayer = (parts.length > 5) ? RenderLayer.valueOf(parts[5].trim()) : layer;
+        return new ParticleEmitter(atlas.add(image), Integer.parseInt(parts[1].trim()),
+                Float.parseFloat(parts[2].trim()), Integer.parseInt(parts[3].trim()), rate, emitterLayer);
+    }
+
     /**
-     * Lets the Sprite react to user's input
+     * Lets the Sprite react to the tick's input, or go on with whatever it does if none of its keys was pressed.
+     * The first of its keys pressed in the tick is its command. If none was, a key of its still held down from before
+     * is, once the sprite is done with its move: a direction held keeps the sprite going.
      *
-     * @param message           some keyboard event
-     * @param currentTime       current game time
+     * @param input             the keys pressed and held in the tick
+     * @param currentTime       the tick's game time
+     * @param level             the level the sprite is on
      */
-    public void processMessage(int[] message, long currentTime, Level level){
+    public void processTick(InputFrame input, long currentTime, Level level){
         //state management
         if(state.energyLevel==0)
             return; // if it's dead, it's dead (but can come back if something rises the level)
-        if(message[1]== KeyEvent.KEY_RELEASED){
-            // ignore key release - not a command FOR THIS SPRITE
-            processGameTick(currentTime);
-            return;
-        }
         //we haven't seen this time tick before
         if(state.stateChangedAt<currentTime){
-            //let's do some generic preparations so behavior has some data to work with
-            KeyCommand command = myCommands.valueOfKey(message[0]);
-            Coordinates target;
-            if(command!=null && actionTargets.get(command)!=null){
-                target = level.findTile(state.current, command, actionTargets.get(command),this.maxMoveDistance);
+            KeyCommand command = null;
+            for (int i = 0; i < input.getPressedCount() && command == null; i++) {
+                command = myCommands.valueOfKey(input.getPressed(i));
+            }
+            // the move of the key is over once the behaviors have gone back to a command without a key
+            if(command == null && !(state.currentCommand instanceof KeyCommand)){
+                for (int i = 0; i < keyCommands.length && command == null; i++) {
+                    if(input.isHeld(keyCommands[i].getKey())){
+                        command = keyCommands[i];
+                    }
+                }
+            }
+            if(command != null){
+                //let's do some generic preparations so behavior has some data to work with
+                Coordinates target = (actionTargets.get(command)!=null) ?
+                        level.findTile(state.current, command, actionTargets.get(command),this.maxMoveDistance) : null;
+                KeyCommand pressed = command;
+                myBehaviors.forEach(behaviorStyle -> behaviorStyle.selectGoal(pressed, target, currentTime));
             } else {
-                target = null;
+                myBehaviors.forEach(bs->bs.selectGoal(currentTime));
             }
-            myBehaviors.forEach(behaviorStyle -> behaviorStyle.selectGoal(command, target, currentTime ));
 //            myInteractions.forEach(interaction -> interaction.processInteraction(currentTime));
-            
         }
         if(state.currentCommand == null){
             logger.fatal("Current command is not set.");
         }
-        drawCurrentPosition(currentTime);
+        emitParticles(currentTime);
     }
 
     /**
-     * If there is no user input, we still want to draw the Sprite wherever it is or update state. This is executed
-     * if there is no command, but a game time has passed OR we need to redraw because screen buffer didn't survive
-     *
-     * @param currentTime       current game time
+     * Remembers where the sprite is as the new tick starts, the frames drawn until the next tick show it moving from
+     * there to wherever the tick takes it
      */
-    public void processGameTick(long currentTime){
-        if(state.energyLevel==0)
-            return; // if it's dead, it's dead (but can come back if something rises the level)
-        if (state.stateChangedAt < currentTime) {
-            myBehaviors.forEach(bs->bs.selectGoal(currentTime));
-//            myInteractions.forEach(interaction -> interaction.processInteraction(currentTime));
-        }
-        if(state.currentCommand == null){
-            logger.fatal("Current command is not set.");
-        } 
-        drawCurrentPosition(currentTime);
+    public void startTick(){
+        state.previous.assign(state.current);
     }
 
-
     /**
-     * Draws a frame of current animation in the current position if the buffer needs to be redrawn. Minimizes the
-     * calculations and avoids calculating deltas
-     * @param currentTime current game time
+     * Selects the frame of current animation for the tick. Minimizes the calculations: the sprites running the same
+     * cycle share the frame resolved by the first of them.
+     * @param currentTime the tick's game time
+     * @return the frame's id in the {@link TextureAtlas}, -1 if there is nothing to draw (e.g. the sprite is dead)
      */
-    private void drawCurrentPosition(long currentTime){
+    public int frameIdAt(long currentTime){
+        if(state.energyLevel==0)
+            return -1; // the dead aren't drawn
         if(state.currentCommand == null || state.currentAnimation ==null) {
             String behaviorStyle = (myBehaviors == null || myBehaviors.isEmpty())? "null" : myBehaviors.get(0).toString();
             int numBehaviors = (myBehaviors == null || myBehaviors.isEmpty())? 0: myBehaviors.size();
             logger.error("No current command or animation set on sprite with behavior {} out of {}, with command {}" +
                     " and animation {}",behaviorStyle,numBehaviors,state.currentCommand, state.currentAnimation);
+            return -1;
+        }
+        return state.currentAnimation.frameAt(state.start_time, state.completion_time, currentTime).getId();
+    }
+
+    /**
+     * @return the layer the sprite is drawn in
+     */
+    public RenderLayer getLayer(){
+        return layer;
+    }
+
+    /**
+     * Emits the current command's particle stream due by now
+     * @param currentTime current game time
+     */
+    private void emitParticles(long currentTime){
+        ParticleEmitter emitter = emitters.get(state.currentCommand);
+        if(emitter == null || state.currentAnimation == null){
+            return;
         }
-            
-        state.currentAnimation.draw(state.start_time, state.completion_time, currentTime,state.current.getX() ,
-                state.current.getY());
+        if(streamedUntil == Long.MIN_VALUE){
+            streamedUntil = currentTime;
+            return;
+        }
+        streamedUntil = emitter.stream(particles, state.current.getX() + state.currentAnimation.getWidth()/2,
+                state.current.getY() + state.currentAnimation.getHeight()/2, streamedUntil, currentTime);
+    }
+
+    /**
+     * @param currentTime current game time
+     * @return true if the sprite is in the middle of a command, so its picture changes on the next tick. The tick at
+     * the completion time counts too: that's when the behaviors pick the next command. So does a tick which moved
+     * it, the frames till the next tick still show it moving.
+     */
+    public boolean isAnimating(long currentTime){
+        return state.energyLevel != 0 && (currentTime <= state.completion_time
+                || state.previous.getX() != state.current.getX() || state.previous.getY() != state.current.getY());
     }
 
     /**
@@ -0,0 +1,86 @@
+package com.goldberg.games2d.graphics;
+
+import com.goldberg.games2d.exceptions.AnimationException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The schedule of an animation's frames, compiled from the descriptor's semicolon-separated durations (parts of the
+ * cycle, summing to 1) into the running sum, so the frame to show is found with a binary search.
+ * Immutable, can be shared.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class AnimationTimeline {
+    /**
+     * The descriptor key of the frame durations
+     */
+    public static final String FRAMES_DURATION_KEY = "frame.duration_sequence";
+    /**
+     * The descriptor key of the frame file name, see {@link #frameFileName(String, int)}
+     */
+    public static final String FRAME_NAME_KEY = "frame.file";
+    /**
+     * Where each frame ends as a part of the cycle
+     */
+    private final float[] ends;
+
+    /**
+     * @param durationSequence the durations from the descriptor
+     */
+    public AnimationTimeline(@NotNull String durationSequence) {
+        String[] durations = durationSequence.split(";");
+        float total = 0;
+        ends = new float[durations.length];
+        for (int i = 0; i < durations.length; i++) {
+            total += Float.parseFloat(durations[i]);
+            ends[i] = total;
+        }
+        if (total != 1.0f) {
+            throw new AnimationException("Animation durations don't sum to 1. Total=" + total);
+        }
+    }
+
+    /**
+     * @return the number of frames
+     */
+    public int size() {
+        return ends.length;
+    }
+
+    /**
+     * @param point the part of the cycle passed
+     * @return index of the first frame ending at or after the point, the last frame if the cycle is over
+     */
+    public int frameAt(float point) {
+        int low = 0, high = ends.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] >= point) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param frame the frame's index
+     * @return the part of the cycle where the frame ends
+     */
+    public float endOf(int frame) {
+        return ends[frame];
+    }
+
+    /**
+     * The frame file name is frameName before '.' + 2-digit frame index + frameName's extension
+     * @param frameName the frame file name from the descriptor
+     * @param index the frame's index
+     * @return the name of the frame's file
+     */
+    public static String frameFileName(@NotNull String frameName, int index) {
+        int extensionStart = frameName.lastIndexOf('.');
+        return String.format("%1$s%2$02d%3$s", frameName.substring(0, extensionStart), index,
+                frameName.substring(extensionStart));
+    }
+}
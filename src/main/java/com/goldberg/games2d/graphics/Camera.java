@@ -0,0 +1,76 @@
+package com.goldberg.games2d.graphics;
+
+/**
+ * The visible part of the level: a rectangle in map pixels which follows a target on both axes and stays within the
+ * map. If the map is smaller than the viewport along an axis, the map is centered along that axis.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class Camera {
+    private int x, y, width, height;
+    private int mapWidth, mapHeight;
+
+    /**
+     * @param mapWidth width of the map in pixels
+     * @param mapHeight height of the map in pixels
+     */
+    public void setMapSize(int mapWidth, int mapHeight) {
+        this.mapWidth = mapWidth;
+        this.mapHeight = mapHeight;
+    }
+
+    /**
+     * @param width width of the viewport in pixels
+     * @param height height of the viewport in pixels
+     */
+    public void setViewportSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Places the target in the middle of the viewport, as far as the map's edges allow
+     * @param targetX absolute (map) x of the target's center
+     * @param targetY absolute (map) y of the target's center
+     */
+    public void follow(int targetX, int targetY) {
+        x = clamp(targetX - width / 2, mapWidth, width);
+        y = clamp(targetY - height / 2, mapHeight, height);
+    }
+
+    private static int clamp(int position, int mapSize, int viewportSize) {
+        if (mapSize <= viewportSize) {
+            return (mapSize - viewportSize) / 2;
+        }
+        return Math.max(0, Math.min(position, mapSize - viewportSize));
+    }
+
+    /**
+     * @return left side of the viewport in map pixels
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return top side of the viewport in map pixels
+     */
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return true if the rectangle (in map pixels) overlaps the viewport
+     */
+    public boolean sees(int left, int top, int rectangleWidth, int rectangleHeight) {
+        return left < x + width && left + rectangleWidth > x && top < y + height && top + rectangleHeight > y;
+    }
+}
@@ -0,0 +1,159 @@
+package com.goldberg.games2d.graphics;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks the parts of the screen that changed since the buffer we are about to draw into was last painted, so only
+ * these parts need repainting. A buffer which was shown N frames ago is stale wherever a sprite was in any of the
+ * frames since then, so the tracker remembers the sprite bounds of the last historyDepth frames. Any scrolling
+ * makes every buffer stale, as does a buffer losing its contents.
+ * Not thread-safe, belongs to the drawing thread.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class DirtyRegionTracker {
+    /**
+     * How many frames ago the buffer being drawn was painted the last time
+     */
+    private int historyDepth = 1;
+    /**
+     * Sprite bounds for the current and past frames, a ring of historyDepth + 1 entries. The rectangles are reused.
+     */
+    private final List<List<Rectangle>> history = new ArrayList<>();
+    private int[] historySizes;
+    private int currentFrame;
+    private final List<Rectangle> dirty = new ArrayList<>();
+    private int dirtyCount;
+    private int fullRepaintsLeft;
+    private int lastViewportX = Integer.MIN_VALUE, lastViewportY = Integer.MIN_VALUE;
+
+    public DirtyRegionTracker() {
+        setHistoryDepth(1);
+    }
+
+    /**
+     * @param historyDepth how many frames ago the buffers we draw into were painted (1 for a blitting strategy, the
+     *                     number of buffers minus 1 for a page-flipping one). Resets the history.
+     */
+    public void setHistoryDepth(int historyDepth) {
+        this.historyDepth = historyDepth;
+        history.clear();
+        for (int i = 0; i <= historyDepth; i++) {
+            history.add(new ArrayList<>());
+        }
+        historySizes = new int[historyDepth + 1];
+        currentFrame = 0;
+        invalidateAll();
+    }
+
+    /**
+     * Makes the next frames repaint the whole screen until each buffer got its full repaint
+     */
+    public void invalidateAll() {
+        fullRepaintsLeft = historyDepth + 1;
+    }
+
+    /**
+     * Starts tracking a new frame
+     * @param viewportX left side of the viewport in map pixels
+     * @param viewportY top side of the viewport in map pixels
+     */
+    public void startFrame(int viewportX, int viewportY) {
+        currentFrame = (currentFrame + 1) % history.size();
+        historySizes[currentFrame] = 0;
+        if (viewportX != lastViewportX || viewportY != lastViewportY) {
+            invalidateAll();
+            lastViewportX = viewportX;
+            lastViewportY = viewportY;
+        }
+    }
+
+    /**
+     * Records a sprite drawn in the current frame
+     * @param x screen x of the sprite
+     * @param y screen y of the sprite
+     * @param width width of the sprite
+     * @param height height of the sprite
+     */
+    public void addSprite(int x, int y, int width, int height) {
+        List<Rectangle> frame = history.get(currentFrame);
+        int size = historySizes[currentFrame];
+        if (size == frame.size()) {
+            frame.add(new Rectangle());
+        }
+        frame.get(size).setBounds(x, y, width, height);
+        historySizes[currentFrame] = size + 1;
+    }
+
+    /**
+     * Calculates what needs repainting in the current frame. Overlapping rectangles are merged, so no pixel gets
+     * painted twice.
+     * @param screenWidth width of the screen
+     * @param screenHeight height of the screen
+     * @return the number of rectangles to repaint, see {@link #dirtyRegion(int)}
+     */
+    public int dirtyRegions(int screenWidth, int screenHeight) {
+        dirtyCount = 0;
+        if (fullRepaintsLeft > 0) {
+            fullRepaintsLeft--;
+            addDirty(0, 0, screenWidth, screenHeight);
+        } else {
+            for (int frame = 0; frame < history.size(); frame++) {
+                List<Rectangle> rectangles = history.get(frame);
+                for (int i = 0; i < historySizes[frame]; i++) {
+                    Rectangle r = rectangles.get(i);
+                    mergeDirty(r.x, r.y, r.width, r.height, screenWidth, screenHeight);
+                }
+            }
+        }
+        return dirtyCount;
+    }
+
+    /**
+     * @param index index of the rectangle, less than returned by {@link #dirtyRegions(int, int)}
+     * @return the rectangle to repaint, in screen coordinates. Gets reused by the next frame.
+     */
+    public Rectangle dirtyRegion(int index) {
+        return dirty.get(index);
+    }
+
+    private void mergeDirty(int x, int y, int width, int height, int screenWidth, int screenHeight) {
+        // clip to the screen
+        int x2 = Math.min(x + width, screenWidth);
+        int y2 = Math.min(y + height, screenHeight);
+        x = Math.max(x, 0);
+        y = Math.max(y, 0);
+        if (x >= x2 || y >= y2) {
+            return;
+        }
+        // grow by union with anything overlapping, until nothing overlaps anymore
+        boolean merged;
+        do {
+            merged = false;
+            for (int i = 0; i < dirtyCount; i++) {
+                Rectangle r = dirty.get(i);
+                if (r.x < x2 && x < r.x + r.width && r.y < y2 && y < r.y + r.height) {
+                    x = Math.min(x, r.x);
+                    y = Math.min(y, r.y);
+                    x2 = Math.max(x2, r.x + r.width);
+                    y2 = Math.max(y2, r.y + r.height);
+                    // remove by moving the last one in its place
+                    dirty.get(i).setBounds(dirty.get(dirtyCount - 1));
+                    dirtyCount--;
+                    merged = true;
+                    break;
+                }
+            }
+        } while (merged);
+        addDirty(x, y, x2 - x, y2 - y);
+    }
+
+    private void addDirty(int x, int y, int width, int height) {
+        if (dirtyCount == dirty.size()) {
+            dirty.add(new Rectangle());
+        }
+        dirty.get(dirtyCount++).setBounds(x, y, width, height);
+    }
+}
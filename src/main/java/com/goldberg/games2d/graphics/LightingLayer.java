@@ -0,0 +1,233 @@
+package com.goldberg.games2d.graphics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Darkness over the map: a mask with one pixel per tile whose alpha is how dark the tile is, stretched over the
+ * view in one blit. The light fades smoothly from tile to tile: the mask is kept smoothed (bilinear) at a few pixels
+ * per tile, which the blit stretches the rest of the way without filtering - filtering the whole view each frame
+ * costs several times more when the blit isn't accelerated. Tiles a light never
+ * reached are the darkest (the fog of war), tiles seen before are dimmer, tiles within a light's radius are lit
+ * brighter towards the light.
+ * Lights move in whole tiles. When one does, only the tiles within its radius before and after the move are
+ * recomputed, and only the mask pixels which changed are written.
+ * Not thread-safe, belongs to the drawing thread.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class LightingLayer {
+    private final int tilesWide, tilesHigh, tileSize;
+    private final int unexploredAlpha, exploredAlpha;
+    /**
+     * The smoothed mask is at most that big in either direction
+     */
+    private static final int MAX_SMOOTHED_SIZE = 2048;
+    private static final int MAX_SMOOTHING = 8;
+    private final BufferedImage mask;
+    private final int[] pixels;
+    private final BufferedImage smoothed;
+    private final int smoothing;
+    // tiles changed since the smoothed mask was updated, left > right if none
+    private int smoothLeft = Integer.MAX_VALUE, smoothTop = Integer.MAX_VALUE, smoothRight = -1, smoothBottom = -1;
+    private final boolean[] explored;
+    private int lights;
+    private int[] lightXs = new int[1], lightYs = new int[1], lightRadiuses = new int[1];
+    // tiles changed since the last takeChanged, left > right if none
+    private int changedLeft = Integer.MAX_VALUE, changedTop = Integer.MAX_VALUE, changedRight = -1, changedBottom = -1;
+
+    /**
+     * @param tilesWide width of the map in tiles
+     * @param tilesHigh height of the map in tiles
+     * @param tileSize size of the tiles in pixels
+     * @param unexploredDarkness how dark the tiles never lit are, 0 to 1
+     * @param exploredDarkness how dark the tiles lit before are, 0 to 1
+     */
+    public LightingLayer(int tilesWide, int tilesHigh, int tileSize, float unexploredDarkness,
+                         float exploredDarkness) {
+        this.tilesWide = tilesWide;
+        this.tilesHigh = tilesHigh;
+        this.tileSize = tileSize;
+        this.unexploredAlpha = toAlpha(unexploredDarkness);
+        this.exploredAlpha = toAlpha(exploredDarkness);
+        mask = new BufferedImage(tilesWide, tilesHigh, BufferedImage.TYPE_INT_ARGB);
+        pixels = ((DataBufferInt) mask.getRaster().getDataBuffer()).getData();
+        explored = new boolean[tilesWide * tilesHigh];
+        Arrays.fill(pixels, unexploredAlpha << 24);
+        smoothing = Math.max(1, Math.min(MAX_SMOOTHING, MAX_SMOOTHED_SIZE / Math.max(tilesWide, tilesHigh)));
+        smoothed = new BufferedImage(tilesWide * smoothing, tilesHigh * smoothing, BufferedImage.TYPE_INT_ARGB_PRE);
+        smoothLeft = 0;
+        smoothTop = 0;
+        smoothRight = tilesWide - 1;
+        smoothBottom = tilesHigh - 1;
+    }
+
+    private static int toAlpha(float darkness) {
+        return Math.round(Math.max(0, Math.min(darkness, 1)) * 255);
+    }
+
+    /**
+     * Adds a light, placed nowhere until {@link #moveLight(int, int, int)}
+     * @param radius how far the light reaches, in tiles
+     * @return the light's index
+     */
+    public int addLight(int radius) {
+        if (lights == lightXs.length) {
+            lightXs = Arrays.copyOf(lightXs, lights * 2);
+            lightYs = Arrays.copyOf(lightYs, lights * 2);
+            lightRadiuses = Arrays.copyOf(lightRadiuses, lights * 2);
+        }
+        lightXs[lights] = Integer.MIN_VALUE / 2;
+        lightYs[lights] = Integer.MIN_VALUE / 2;
+        lightRadiuses[lights] = radius;
+        return lights++;
+    }
+
+    /**
+     * Moves a light, recomputing the tiles it reached or reaches now
+     * @param light the light's index
+     * @param tileX the tile the light is on now
+     * @param tileY the tile the light is on now
+     */
+    public void moveLight(int light, int tileX, int tileY) {
+        int oldX = lightXs[light];
+        int oldY = lightYs[light];
+        if (oldX == tileX && oldY == tileY) {
+            return;
+        }
+        int radius = lightRadiuses[light];
+        lightXs[light] = tileX;
+        lightYs[light] = tileY;
+        update(oldX - radius, oldY - radius, oldX + radius, oldY + radius);
+        update(tileX - radius, tileY - radius, tileX + radius, tileY + radius);
+    }
+
+    /**
+     * Recomputes the tiles in a rectangle, in tiles, inclusive
+     */
+    private void update(int left, int top, int right, int bottom) {
+        left = Math.max(left, 0);
+        top = Math.max(top, 0);
+        right = Math.min(right, tilesWide - 1);
+        bottom = Math.min(bottom, tilesHigh - 1);
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                int tile = y * tilesWide + x;
+                int alpha = darkness(x, y, tile);
+                if (pixels[tile] >>> 24 != alpha) {
+                    pixels[tile] = alpha << 24;
+                    changedLeft = Math.min(changedLeft, x);
+                    changedTop = Math.min(changedTop, y);
+                    changedRight = Math.max(changedRight, x);
+                    changedBottom = Math.max(changedBottom, y);
+                    smoothLeft = Math.min(smoothLeft, x);
+                    smoothTop = Math.min(smoothTop, y);
+                    smoothRight = Math.max(smoothRight, x);
+                    smoothBottom = Math.max(smoothBottom, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the alpha of a tile: the darkness left by the nearest light, the fog if there's none
+     */
+    private int darkness(int x, int y, int tile) {
+        int alpha = -1;
+        for (int light = 0; light < lights; light++) {
+            int dx = x - lightXs[light];
+            int dy = y - lightYs[light];
+            int radius = lightRadiuses[light];
+            int distance2 = dx * dx + dy * dy;
+            if (distance2 <= radius * radius) {
+                int lit = exploredAlpha * distance2 / Math.max(radius * radius, 1);
+                alpha = (alpha < 0) ? lit : Math.min(alpha, lit);
+            }
+        }
+        if (alpha >= 0) {
+            explored[tile] = true;
+            return alpha;
+        }
+        return explored[tile] ? exploredAlpha : unexploredAlpha;
+    }
+
+    /**
+     * Reports the area changed since the last call to the tracker as changed in the current frame, and forgets it
+     * @param tracker the tracker to report to, null if nobody needs to know
+     * @param viewportX left side of the viewport in map pixels
+     * @param viewportY top side of the viewport in map pixels
+     */
+    public void takeChanged(DirtyRegionTracker tracker, int viewportX, int viewportY) {
+        if (tracker != null && changedLeft <= changedRight) {
+            // the filtering spreads a tile's change half a tile around it
+            tracker.addSprite((changedLeft - 1) * tileSize - viewportX, (changedTop - 1) * tileSize - viewportY,
+                    (changedRight - changedLeft + 3) * tileSize, (changedBottom - changedTop + 3) * tileSize);
+        }
+        changedLeft = Integer.MAX_VALUE;
+        changedTop = Integer.MAX_VALUE;
+        changedRight = -1;
+        changedBottom = -1;
+    }
+
+    /**
+     * Darkens the camera's view. The graphics is expected to be translated to the map's coordinates, in screen
+     * pixels.
+     * @param g the graphics to use
+     * @param camera the camera
+     * @param scale screen pixels per map pixel
+     */
+    public void draw(@NotNull Graphics2D g, @NotNull Camera camera, float scale) {
+        int left = Math.max(Math.floorDiv(camera.getX(), tileSize), 0);
+        int top = Math.max(Math.floorDiv(camera.getY(), tileSize), 0);
+        int right = Math.min(Math.floorDiv(camera.getX() + camera.getWidth() - 1, tileSize) + 1, tilesWide);
+        int bottom = Math.min(Math.floorDiv(camera.getY() + camera.getHeight() - 1, tileSize) + 1, tilesHigh);
+        if (left >= right || top >= bottom) {
+            return;
+        }
+        if (smoothLeft <= smoothRight) {
+            smooth();
+        }
+        Object interpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.drawImage(smoothed, Math.round(left * tileSize * scale), Math.round(top * tileSize * scale),
+                Math.round(right * tileSize * scale), Math.round(bottom * tileSize * scale),
+                left * smoothing, top * smoothing, right * smoothing, bottom * smoothing, null);
+        if (interpolation != null) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+    }
+
+    /**
+     * Redoes the smoothed mask where the tiles changed. The smoothing of a tile depends on its neighbours, so the
+     * tiles next to the changed ones are redone too, from a source one more tile wider.
+     */
+    private void smooth() {
+        int clipLeft = Math.max(smoothLeft - 1, 0);
+        int clipTop = Math.max(smoothTop - 1, 0);
+        int clipRight = Math.min(smoothRight + 2, tilesWide);
+        int clipBottom = Math.min(smoothBottom + 2, tilesHigh);
+        int left = Math.max(clipLeft - 1, 0);
+        int top = Math.max(clipTop - 1, 0);
+        int right = Math.min(clipRight + 1, tilesWide);
+        int bottom = Math.min(clipBottom + 1, tilesHigh);
+        Graphics2D g = smoothed.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Src);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.clipRect(clipLeft * smoothing, clipTop * smoothing, (clipRight - clipLeft) * smoothing,
+                    (clipBottom - clipTop) * smoothing);
+            g.drawImage(mask, left * smoothing, top * smoothing, right * smoothing, bottom * smoothing,
+                    left, top, right, bottom, null);
+        } finally {
+            g.dispose();
+        }
+        smoothLeft = Integer.MAX_VALUE;
+        smoothTop = Integer.MAX_VALUE;
+        smoothRight = -1;
+        smoothBottom = -1;
+    }
+}
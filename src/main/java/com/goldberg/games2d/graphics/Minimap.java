@@ -0,0 +1,182 @@
+package com.goldberg.games2d.graphics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * The whole level at a glance: each tile is a few pixels (or less than one on a big map) of its average color, the
+ * tracked sprites are dots over them. The picture is rendered once from the map; afterwards only the pixels of the
+ * tiles which changed their color and under the markers which moved are repainted, so a frame costs one blit of a
+ * small image however big the map is.
+ * Not thread-safe, belongs to the drawing thread.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class Minimap {
+    /**
+     * A tile never takes more pixels than that
+     */
+    private static final int MAX_PIXELS_PER_TILE = 4;
+    /**
+     * The smallest side of a marker's dot, in pixels
+     */
+    private static final int MIN_MARKER_SIZE = 3;
+    private final int tilesWide, tilesHigh;
+    private final float pixelsPerTile;
+    private final int width, height, markerSize;
+    private final BufferedImage image;
+    private final int[] pixels;
+    private final int[] tileColors;
+    private int markers;
+    private int[] markerXs = new int[1], markerYs = new int[1], markerColors = new int[1];
+
+    /**
+     * @param tilesWide width of the map in tiles
+     * @param tilesHigh height of the map in tiles
+     * @param size the longer side of the minimap is at most that many pixels
+     * @param tileColors the color of each tile, y * tilesWide + x, RGB
+     */
+    public Minimap(int tilesWide, int tilesHigh, int size, int @NotNull [] tileColors) {
+        this.tilesWide = tilesWide;
+        this.tilesHigh = tilesHigh;
+        this.tileColors = Arrays.copyOf(tileColors, tilesWide * tilesHigh);
+        pixelsPerTile = Math.min(MAX_PIXELS_PER_TILE, (float) size / Math.max(tilesWide, tilesHigh));
+        width = Math.max(1, Math.round(tilesWide * pixelsPerTile));
+        height = Math.max(1, Math.round(tilesHigh * pixelsPerTile));
+        markerSize = Math.max(MIN_MARKER_SIZE, (int) Math.ceil(pixelsPerTile));
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        repaint(0, 0, width, height);
+    }
+
+    /**
+     * @return width of the minimap in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the minimap in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Changes a tile's color, repainting its pixels
+     * @param tileX the tile's x on the map
+     * @param tileY the tile's y on the map
+     * @param color the new color, RGB
+     */
+    public void setTileColor(int tileX, int tileY, int color) {
+        int tile = tileY * tilesWide + tileX;
+        if (tileColors[tile] == color) {
+            return;
+        }
+        tileColors[tile] = color;
+        int left = (int) (tileX * pixelsPerTile);
+        int top = (int) (tileY * pixelsPerTile);
+        repaint(left, top, (int) Math.ceil((tileX + 1) * pixelsPerTile) - left,
+                (int) Math.ceil((tileY + 1) * pixelsPerTile) - top);
+    }
+
+    /**
+     * Adds a marker, placed nowhere until {@link #moveMarker(int, int, int)}. The markers added later are drawn over
+     * the earlier ones.
+     * @param color the marker's color, RGB
+     * @return the marker's index
+     */
+    public int addMarker(int color) {
+        if (markers == markerXs.length) {
+            markerXs = Arrays.copyOf(markerXs, markers * 2);
+            markerYs = Arrays.copyOf(markerYs, markers * 2);
+            markerColors = Arrays.copyOf(markerColors, markers * 2);
+        }
+        markerXs[markers] = -1;
+        markerYs[markers] = -1;
+        markerColors[markers] = color;
+        return markers++;
+    }
+
+    /**
+     * Moves a marker, repainting the pixels it left and covers now
+     * @param marker the marker's index
+     * @param tileX the tile the marker is on now
+     * @param tileY the tile the marker is on now
+     */
+    public void moveMarker(int marker, int tileX, int tileY) {
+        if (markerXs[marker] == tileX && markerYs[marker] == tileY) {
+            return;
+        }
+        int oldX = markerXs[marker];
+        int oldY = markerYs[marker];
+        markerXs[marker] = tileX;
+        markerYs[marker] = tileY;
+        if (oldX >= 0) {
+            repaint(markerLeft(oldX), markerTop(oldY), markerSize, markerSize);
+        }
+        repaint(markerLeft(tileX), markerTop(tileY), markerSize, markerSize);
+    }
+
+    private int markerLeft(int tileX) {
+        return (int) ((tileX + 0.5f) * pixelsPerTile) - markerSize / 2;
+    }
+
+    private int markerTop(int tileY) {
+        return (int) ((tileY + 0.5f) * pixelsPerTile) - markerSize / 2;
+    }
+
+    /**
+     * Repaints a rectangle of pixels from the tiles, then the markers over it
+     */
+    private void repaint(int left, int top, int rectangleWidth, int rectangleHeight) {
+        int right = Math.min(left + rectangleWidth, width);
+        int bottom = Math.min(top + rectangleHeight, height);
+        left = Math.max(left, 0);
+        top = Math.max(top, 0);
+        for (int y = top; y < bottom; y++) {
+            int tileY = Math.min((int) ((y + 0.5f) / pixelsPerTile), tilesHigh - 1);
+            for (int x = left; x < right; x++) {
+                int tileX = Math.min((int) ((x + 0.5f) / pixelsPerTile), tilesWide - 1);
+                pixels[y * width + x] = tileColors[tileY * tilesWide + tileX];
+            }
+        }
+        for (int marker = 0; marker < markers; marker++) {
+            if (markerXs[marker] < 0) {
+                continue;
+            }
+            int markerLeft = Math.max(markerLeft(markerXs[marker]), left);
+            int markerTop = Math.max(markerTop(markerYs[marker]), top);
+            int markerRight = Math.min(markerLeft(markerXs[marker]) + markerSize, right);
+            int markerBottom = Math.min(markerTop(markerYs[marker]) + markerSize, bottom);
+            if (markerLeft >= markerRight) {
+                continue;
+            }
+            for (int y = markerTop; y < markerBottom; y++) {
+                Arrays.fill(pixels, y * width + markerLeft, y * width + markerRight, markerColors[marker]);
+            }
+        }
+    }
+
+    /**
+     * Draws the minimap with one blit
+     * @param g the graphics to use
+     * @param x where the minimap's left side goes
+     * @param y where the minimap's top side goes
+     * @param scale how many pixels of the graphics a pixel of the minimap takes
+     */
+    public void draw(@NotNull Graphics2D g, int x, int y, float scale) {
+        Object interpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.drawImage(image, x, y, x + Math.round(width * scale), y + Math.round(height * scale), 0, 0, width, height,
+                null);
+        if (interpolation != null) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+    }
+}
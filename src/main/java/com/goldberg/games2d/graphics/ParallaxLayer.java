@@ -0,0 +1,83 @@
+package com.goldberg.games2d.graphics;
+
+import com.goldberg.games2d.hardware.ImageImporter;
+import com.goldberg.games2d.hardware.ImportedImage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * A picture repeated over the whole level, scrolling at its own rate relative to the camera: 0 stays still, 1 moves
+ * with the map, anything in between looks farther away than the map. The picture wraps around in both directions.
+ * It's pre-rendered once into a strip covering the viewport plus one more copy of the picture each way, so whatever
+ * the camera's position, the view is a single blit of a part of the strip. The strip is rebuilt only when the
+ * viewport's size changes.
+ * Not thread-safe, belongs to the drawing thread.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class ParallaxLayer {
+    private static final Logger logger = LogManager.getLogger();
+    private final ImportedImage picture;
+    private final float rate;
+    private final ImageImporter importer;
+    private ImportedImage strip;
+    private int stripViewportWidth, stripViewportHeight;
+
+    /**
+     * @param picture the picture to repeat
+     * @param rate how fast the layer scrolls relative to the camera
+     * @param importer makes the strip compatible with the display
+     */
+    public ParallaxLayer(@NotNull ImportedImage picture, float rate, @NotNull ImageImporter importer) {
+        this.picture = picture;
+        this.rate = rate;
+        this.importer = importer;
+    }
+
+    /**
+     * Draws the part of the layer the camera sees over its whole view. The graphics is expected to be translated to
+     * the map's coordinates.
+     * @param g the graphics to use
+     * @param camera the camera
+     */
+    public void draw(@NotNull Graphics2D g, @NotNull Camera camera) {
+        if (strip == null || stripViewportWidth != camera.getWidth() || stripViewportHeight != camera.getHeight()) {
+            buildStrip(camera.getWidth(), camera.getHeight());
+        }
+        int offsetX = Math.floorMod((int) (camera.getX() * rate), picture.getWidth());
+        int offsetY = Math.floorMod((int) (camera.getY() * rate), picture.getHeight());
+        strip.draw(g, camera.getX(), camera.getY(), offsetX, offsetY, camera.getWidth(), camera.getHeight());
+    }
+
+    private void buildStrip(int viewportWidth, int viewportHeight) {
+        if (strip != null) {
+            importer.release(strip);
+        }
+        int width = picture.getWidth();
+        int height = picture.getHeight();
+        int stripWidth = ((viewportWidth + width - 1) / width + 1) * width;
+        int stripHeight = ((viewportHeight + height - 1) / height + 1) * height;
+        boolean opaque = picture.getTransparency() == Transparency.OPAQUE;
+        BufferedImage image = new BufferedImage(stripWidth, stripHeight,
+                opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            for (int y = 0; y < stripHeight; y += height) {
+                for (int x = 0; x < stripWidth; x += width) {
+                    g.drawImage(picture.getSource(), x, y, null);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        strip = importer.importImage(image, opaque);
+        stripViewportWidth = viewportWidth;
+        stripViewportHeight = viewportHeight;
+        logger.debug("parallax strip of {}x{} for a viewport of {}x{}", stripWidth, stripHeight, viewportWidth,
+                viewportHeight);
+    }
+}
@@ -0,0 +1,81 @@
+package com.goldberg.games2d.graphics;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Describes how particles of one kind are emitted: a burst when the emission starts and optionally a steady stream
+ * while it lasts. Each particle flies from the origin in a random direction. Stateless, can be shared by many
+ * sprites.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class ParticleEmitter {
+    private final SpriteFrame frame;
+    private final int burst;
+    private final float speed;
+    private final int lifetime;
+    private final float rate;
+    private final RenderLayer layer;
+
+    /**
+     * @param frame what the particles look like
+     * @param burst how many particles to emit at once when the emission starts
+     * @param speed the fastest particle's speed, pixels per ms
+     * @param lifetime the longest particle's lifetime, ms
+     * @param rate how many particles to emit per second while the emission lasts, 0 for the burst only
+     * @param layer the layer to draw the particles in
+     */
+    public ParticleEmitter(@NotNull SpriteFrame frame, int burst, float speed, int lifetime, float rate,
+                           @NotNull RenderLayer layer) {
+        this.frame = frame;
+        this.burst = burst;
+        this.speed = speed;
+        this.lifetime = lifetime;
+        this.rate = rate;
+        this.layer = layer;
+    }
+
+    /**
+     * Emits the burst
+     * @param particles where the particles live
+     * @param x absolute (map) x of the origin
+     * @param y absolute (map) y of the origin
+     */
+    public void start(@NotNull ParticleSystem particles, int x, int y) {
+        emit(particles, x, y, burst);
+    }
+
+    /**
+     * Emits the stream particles due for a period
+     * @param particles where the particles live
+     * @param x absolute (map) x of the origin
+     * @param y absolute (map) y of the origin
+     * @param from the time the previous stream particles were emitted
+     * @param to the current time
+     * @return the time the emission is accounted for until, pass it as from next time
+     */
+    public long stream(@NotNull ParticleSystem particles, int x, int y, long from, long to) {
+        if (rate <= 0 || to <= from) {
+            return to;
+        }
+        int due = (int) ((to - from) * rate / 1000);
+        if (due == 0) {
+            // not even one yet, keep accumulating
+            return from;
+        }
+        emit(particles, x, y, due);
+        return from + (long) (due * 1000 / rate);
+    }
+
+    private void emit(ParticleSystem particles, int x, int y, int count) {
+        float left = x - frame.getWidth() / 2f;
+        float top = y - frame.getHeight() / 2f;
+        for (int i = 0; i < count; i++) {
+            double angle = particles.nextRandom() * 2 * Math.PI;
+            float particleSpeed = speed * (0.5f + particles.nextRandom() * 0.5f);
+            int particleLifetime = (int) (lifetime * (0.75f + particles.nextRandom() * 0.25f));
+            particles.spawn(frame, layer, left, top, (float) Math.cos(angle) * particleSpeed,
+                    (float) Math.sin(angle) * particleSpeed, particleLifetime);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.goldberg.games2d.graphics;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import java.util.List;
+
+/**
+ * Short-lived images (splashes, ripples...) moving on their own. The particles are kept in preallocated parallel
+ * primitive arrays, the live ones packed at the front: an expired particle's slot is taken by the last live one, so
+ * {@link #update(long)} is one tight loop over the live particles and spawning is an append. When all the slots are
+ * taken, new particles are dropped. Nothing is allocated after the construction.
+ * Particles are emitted by {@link ParticleEmitter}s. Each tick the live ones are copied out with
+ * {@link #copyTo(int[], int[], int[], int[], int[])}, and the copy is submitted for drawing in one batch per frame.
+ * Not thread-safe: spawning, updating and copying belong to the simulation thread, submitting to the drawing
+ * thread.
+ * @author antonymouse
+ * @since 0.3
+ */
+@Singleton
+public class ParticleSystem {
+    /**
+     * How far out of the camera's view a particle may be and still get submitted, in pixels
+     */
+    private static final int CULL_MARGIN = 64;
+    private final RenderCommandBuffer renderCommands;
+    private final int capacity;
+    private int count;
+    // the particles, in pixels and ms
+    private final float[] xs, ys, velocitiesX, velocitiesY;
+    private final int[] ages, lifetimes, frameIds, layers, depthOffsets;
+    // the batch submitted for drawing
+    private final int[] batchFrameIds, batchXs, batchYs, batchLayers, batchDepths;
+    /**
+     * The most cameras {@link #submit(int, int[], int[], int[], int[], int[], List)} culls against
+     */
+    public static final int MAX_CAMERAS = 4;
+    // the cameras' views grown by the margin, map pixels
+    private final int[] cameraLefts = new int[MAX_CAMERAS], cameraTops = new int[MAX_CAMERAS],
+            cameraRights = new int[MAX_CAMERAS], cameraBottoms = new int[MAX_CAMERAS];
+    /**
+     * Every stride-th particle is submitted for drawing, the drawing thread's
+     */
+    private int stride = 1;
+    private long lastUpdate = Long.MIN_VALUE;
+    private long dropped;
+    private int random = 0x9E3779B9;
+
+    /**
+     * @param capacity the maximum number of live particles
+     * @param renderCommands where the particles go for drawing
+     */
+    @Inject
+    public ParticleSystem(@Named("PARTICLE_CAPACITY") String capacity, RenderCommandBuffer renderCommands) {
+        this.renderCommands = renderCommands;
+        this.capacity = Integer.parseInt(capacity.trim());
+        xs = new float[this.capacity];
+        ys = new float[this.capacity];
+        velocitiesX = new float[this.capacity];
+        velocitiesY = new float[this.capacity];
+        ages = new int[this.capacity];
+        lifetimes = new int[this.capacity];
+        frameIds = new int[this.capacity];
+        layers = new int[this.capacity];
+        depthOffsets = new int[this.capacity];
+        batchFrameIds = new int[this.capacity];
+        batchXs = new int[this.capacity];
+        batchYs = new int[this.capacity];
+        batchLayers = new int[this.capacity];
+        batchDepths = new int[this.capacity];
+    }
+
+    /**
+     * Adds a particle, unless all the slots are taken
+     * @param frame what the particle looks like
+     * @param layer the layer to draw it in
+     * @param x absolute (map) x of the particle's top left corner
+     * @param y absolute (map) y of the particle's top left corner
+     * @param velocityX pixels per ms
+     * @param velocityY pixels per ms
+     * @param lifetime how long the particle lives, ms
+     */
+    public void spawn(SpriteFrame frame, RenderLayer layer, float x, float y, float velocityX, float velocityY,
+                      int lifetime) {
+        if (count == capacity) {
+            dropped++;
+            return;
+        }
+        int i = count++;
+        xs[i] = x;
+        ys[i] = y;
+        velocitiesX[i] = velocityX;
+        velocitiesY[i] = velocityY;
+        ages[i] = 0;
+        lifetimes[i] = lifetime;
+        frameIds[i] = frame.getId();
+        layers[i] = layer.ordinal();
+        depthOffsets[i] = frame.getHeight();
+    }
+
+    /**
+     * Moves the particles to the given time and frees the slots of the expired ones. Does nothing if the time didn't
+     * change since the last call.
+     * @param currentTime current game time
+     */
+    public void update(long currentTime) {
+        if (lastUpdate == Long.MIN_VALUE || currentTime <= lastUpdate) {
+            lastUpdate = Math.max(lastUpdate, currentTime);
+            return;
+        }
+        int elapsed = (int) Math.min(currentTime - lastUpdate, Integer.MAX_VALUE);
+        lastUpdate = currentTime;
+        int i = 0;
+        while (i < count) {
+            int age = ages[i] + elapsed;
+            if (age >= lifetimes[i]) {
+                // the last live particle takes the slot, and gets updated in the next round
+                int last = --count;
+                xs[i] = xs[last];
+                ys[i] = ys[last];
+                velocitiesX[i] = velocitiesX[last];
+                velocitiesY[i] = velocitiesY[last];
+                ages[i] = ages[last];
+                lifetimes[i] = lifetimes[last];
+                frameIds[i] = frameIds[last];
+                layers[i] = layers[last];
+                depthOffsets[i] = depthOffsets[last];
+                continue;
+            }
+            ages[i] = age;
+            xs[i] += velocitiesX[i] * elapsed;
+            ys[i] += velocitiesY[i] * elapsed;
+            i++;
+        }
+    }
+
+    /**
+     * Copies the live particles out, for drawing
+     * @param frameIds the particles' frames' ids in the {@link TextureAtlas}, at least {@link #getCapacity()} long
+     * @param xs the particles' map x
+     * @param ys the particles' map y
+     * @param layers the particles' layers
+     * @param depths the particles' positions within the layers
+     * @return the number of particles copied
+     */
+    public int copyTo(int[] frameIds, int[] xs, int[] ys, int[] layers, int[] depths) {
+        for (int i = 0; i < count; i++) {
+            int y = (int) this.ys[i];
+            frameIds[i] = this.frameIds[i];
+            xs[i] = (int) this.xs[i];
+            ys[i] = y;
+            layers[i] = this.layers[i];
+            depths[i] = y + depthOffsets[i];
+        }
+        return count;
+    }
+
+    /**
+     * Submits the copied particles any of the cameras can see for drawing, as one batch; only every stride-th one if
+     * a stride is set, see {@link #setStride(int)}
+     * @param count the number of particles copied
+     * @param frameIds see {@link #copyTo(int[], int[], int[], int[], int[])}
+     * @param xs see {@link #copyTo(int[], int[], int[], int[], int[])}
+     * @param ys see {@link #copyTo(int[], int[], int[], int[], int[])}
+     * @param layers see {@link #copyTo(int[], int[], int[], int[], int[])}
+     * @param depths see {@link #copyTo(int[], int[], int[], int[], int[])}
+     * @param cameras the cameras
+     */
+    public void submit(int count, int[] frameIds, int[] xs, int[] ys, int[] layers, int[] depths,
+                       List<Camera> cameras) {
+        int batch = 0;
+        int cameraCount = cameras.size();
+        for (int c = 0; c < cameraCount; c++) {
+            Camera camera = cameras.get(c);
+            cameraLefts[c] = camera.getX() - CULL_MARGIN;
+            cameraTops[c] = camera.getY() - CULL_MARGIN;
+            cameraRights[c] = camera.getX() + camera.getWidth() + CULL_MARGIN;
+            cameraBottoms[c] = camera.getY() + camera.getHeight() + CULL_MARGIN;
+        }
+        for (int i = 0; i < count; i += stride) {
+            int x = xs[i];
+            int y = ys[i];
+            if (seen(x, y, cameraCount)) {
+                batchFrameIds[batch] = frameIds[i];
+                batchXs[batch] = x;
+                batchYs[batch] = y;
+                batchLayers[batch] = layers[i];
+                batchDepths[batch] = depths[i];
+                batch++;
+            }
+        }
+        renderCommands.submitBatch(batch, batchFrameIds, batchXs, batchYs, batchLayers, batchDepths);
+    }
+
+    private boolean seen(int x, int y, int cameraCount) {
+        for (int c = 0; c < cameraCount; c++) {
+            if (x >= cameraLefts[c] && x < cameraRights[c] && y >= cameraTops[c] && y < cameraBottoms[c]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a pseudo-random number from 0 (inclusive) to 1 (exclusive), xorshift, doesn't allocate
+     */
+    float nextRandom() {
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        return (random >>> 8) / (float) (1 << 24);
+    }
+
+    /**
+     * Thins the particles drawn out, e.g. to save time on slow hardware. The drawing thread's, like
+     * {@link #submit(int, int[], int[], int[], int[], int[], List)}.
+     * @param stride 1 to draw every particle, n to draw every n-th one
+     */
+    public void setStride(int stride) {
+        this.stride = Math.max(1, stride);
+    }
+
+    /**
+     * @return the most particles alive at once
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of live particles
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return how many particles were dropped as there was no free slot
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,243 @@
+package com.goldberg.games2d.graphics;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Keeps the frames within a time budget on weak hardware by trading the quality for time. It watches how long the
+ * frames take to draw, in windows of {@link #WINDOW} frames: a window over the budget on average takes one step
+ * down a ladder of {@link QualityKnob}s, the cheapest looking cuts first; {@link #CALM_WINDOWS} windows in a row
+ * under {@link #RECOVERY} of the budget take one step back up. The gap between the two thresholds is the
+ * hysteresis, so a frame time near the budget doesn't flip the quality every window. The window a change takes
+ * effect in isn't judged. A step up which goes over the budget right away makes the next step up wait twice as
+ * long; a step down which makes the frames slower (e.g. a lower resolution scaled up without acceleration) is
+ * undone and left out of the ladder from then on.
+ * Not thread-safe, belongs to the drawing thread.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class QualityGovernor {
+    private static final Logger logger = LogManager.getLogger();
+    /**
+     * The knobs in the order they are turned down, each entry is one level of its knob
+     */
+    private static final QualityKnob[] LADDER = {QualityKnob.ANTIALIASING, QualityKnob.PARTICLES,
+            QualityKnob.PARALLAX, QualityKnob.PARTICLES, QualityKnob.INTERPOLATION, QualityKnob.RENDER_SCALE,
+            QualityKnob.RENDER_SCALE};
+    /**
+     * The frames averaged before a decision
+     */
+    static final int WINDOW = 30;
+    /**
+     * The quality goes back up only when the frames take less than that share of the budget
+     */
+    static final double RECOVERY = 0.7;
+    /**
+     * The windows under the recovery threshold in a row which take the quality up a step
+     */
+    static final int CALM_WINDOWS = 4;
+    /**
+     * A step down is undone if the frames take longer than that share of what they took before it
+     */
+    static final double WORSE = 1.25;
+    /**
+     * The longest wait for a step up, windows
+     */
+    private static final int MAX_CALM_WINDOWS = 64;
+    private final long budgetNanos;
+    private final Map<QualityKnob, Integer> levels = new EnumMap<>(QualityKnob.class);
+    /**
+     * The entries of the ladder taken, in the order they were taken
+     */
+    private final int[] taken = new int[LADDER.length];
+    private int takenCount;
+    /**
+     * The entries of the ladder which made the frames slower on this hardware
+     */
+    private final boolean[] useless = new boolean[LADDER.length];
+    private long windowNanos;
+    private int windowFrames;
+    private int calmWindows;
+    private int calmWindowsNeeded = CALM_WINDOWS;
+    /**
+     * True in the window a change takes effect in
+     */
+    private boolean settling;
+    /**
+     * True in the first window judged after a step up
+     */
+    private boolean steppedUp;
+    /**
+     * The mean frame before the last step down, ns, 0 once the step is judged
+     */
+    private long meanBeforeStep;
+    private long stepsDown, stepsUp;
+
+    /**
+     * @param frameBudget the longest a frame should take to draw, ms, 0 keeps the full quality whatever the frames
+     *                    take
+     */
+    @Inject
+    public QualityGovernor(@Named("FRAME_BUDGET") String frameBudget) {
+        this.budgetNanos = (long) (Double.parseDouble(frameBudget.trim()) * 1_000_000);
+        for (QualityKnob knob : QualityKnob.values()) {
+            levels.put(knob, 0);
+        }
+    }
+
+    /**
+     * Counts a frame drawn
+     * @param drawNanos how long the frame took to draw, ns
+     * @return true if the quality changed, the knobs need applying
+     */
+    public boolean frameDrawn(long drawNanos) {
+        if (budgetNanos <= 0) {
+            return false;
+        }
+        windowNanos += drawNanos;
+        if (++windowFrames < WINDOW) {
+            return false;
+        }
+        long mean = windowNanos / windowFrames;
+        windowNanos = 0;
+        windowFrames = 0;
+        if (settling) {
+            settling = false;
+            return false;
+        }
+        boolean justSteppedUp = steppedUp;
+        steppedUp = false;
+        long before = meanBeforeStep;
+        meanBeforeStep = 0;
+        if (before > 0 && mean > before * WORSE) {
+            int rung = taken[--takenCount];
+            QualityKnob knob = LADDER[rung];
+            levels.put(knob, levels.get(knob) - 1);
+            for (int i = rung; i < LADDER.length; i++) {
+                // the knob's lower levels wouldn't help either
+                useless[i] |= LADDER[i] == knob;
+            }
+            settling = true;
+            logger.info("frames take {} ms, {} ms before {} went down, back to {} for good",
+                    String.format("%.2f", mean / 1e6), String.format("%.2f", before / 1e6), knob, levels.get(knob));
+            return true;
+        }
+        if (mean > budgetNanos) {
+            calmWindows = 0;
+            if (justSteppedUp) {
+                // the quality it went back to is too much yet, don't try again too soon
+                calmWindowsNeeded = Math.min(calmWindowsNeeded * 2, MAX_CALM_WINDOWS);
+            }
+            int rung = nextRung();
+            if (rung == LADDER.length) {
+                return false;
+            }
+            taken[takenCount++] = rung;
+            QualityKnob knob = LADDER[rung];
+            levels.put(knob, levels.get(knob) + 1);
+            stepsDown++;
+            settling = true;
+            meanBeforeStep = mean;
+            logger.info("frames take {} ms, over the {} ms budget: {} down to {}", String.format("%.2f", mean / 1e6),
+                    String.format("%.2f", budgetNanos / 1e6), knob, levels.get(knob));
+            return true;
+        }
+        if (mean >= budgetNanos * RECOVERY || takenCount == 0) {
+            calmWindows = 0;
+            return false;
+        }
+        if (++calmWindows < calmWindowsNeeded) {
+            return false;
+        }
+        calmWindows = 0;
+        QualityKnob knob = LADDER[taken[--takenCount]];
+        levels.put(knob, levels.get(knob) - 1);
+        steppedUp = true;
+        settling = true;
+        stepsUp++;
+        logger.info("frames take {} ms of the {} ms budget: {} up to {}", String.format("%.2f", mean / 1e6),
+                String.format("%.2f", budgetNanos / 1e6), knob, levels.get(knob));
+        return true;
+    }
+
+    /**
+     * @return the entry of the ladder to take next, LADDER.length if there is none left
+     */
+    private int nextRung() {
+        int rung = (takenCount == 0) ? 0 : taken[takenCount - 1] + 1;
+        while (rung < LADDER.length && useless[rung]) {
+            rung++;
+        }
+        return rung;
+    }
+
+    /**
+     * @param knob the knob
+     * @return the knob's current level, 0 for the full quality
+     */
+    public int getLevel(QualityKnob knob) {
+        return levels.get(knob);
+    }
+
+    /**
+     * @return true if the shapes are antialiased
+     */
+    public boolean isAntialiasing() {
+        return getLevel(QualityKnob.ANTIALIASING) == 0;
+    }
+
+    /**
+     * @return true if the frames are placed between the ticks
+     */
+    public boolean isInterpolating() {
+        return getLevel(QualityKnob.INTERPOLATION) == 0;
+    }
+
+    /**
+     * @return 1 to draw every particle, n to draw every n-th one
+     */
+    public int getParticleStride() {
+        return 1 << getLevel(QualityKnob.PARTICLES);
+    }
+
+    /**
+     * @return true if the parallax layers are drawn
+     */
+    public boolean isParallaxShown() {
+        return getLevel(QualityKnob.PARALLAX) == 0;
+    }
+
+    /**
+     * @return the share of the screen's resolution the frames are drawn at, up to 1
+     */
+    public float getRenderScale() {
+        return 1 - 0.25f * getLevel(QualityKnob.RENDER_SCALE);
+    }
+
+    /**
+     * @return how many times the quality went down
+     */
+    public long getStepsDown() {
+        return stepsDown;
+    }
+
+    /**
+     * @return how many times the quality went up
+     */
+    public long getStepsUp() {
+        return stepsUp;
+    }
+
+    /**
+     * @return the knobs' levels
+     */
+    @Override
+    public String toString() {
+        return levels.toString();
+    }
+}
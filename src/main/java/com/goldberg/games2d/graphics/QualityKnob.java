@@ -0,0 +1,29 @@
+package com.goldberg.games2d.graphics;
+
+/**
+ * The drawing's costs {@link QualityGovernor} can cut, each from level 0, the full quality, to its cheapest level
+ * @author antonymouse
+ * @since 0.3
+ */
+public enum QualityKnob {
+    /**
+     * 0 antialiases the shapes drawn, 1 doesn't
+     */
+    ANTIALIASING,
+    /**
+     * 0 places the sprites and the cameras between the ticks, 1 draws the latest tick as it is
+     */
+    INTERPOLATION,
+    /**
+     * 0 draws all the particles, 1 every second one, 2 every fourth one
+     */
+    PARTICLES,
+    /**
+     * 0 draws the parallax layers, 1 doesn't
+     */
+    PARALLAX,
+    /**
+     * 0 draws the frame at the full resolution, 1 at 3/4 of it and 2 at a half, scaled up to the screen
+     */
+    RENDER_SCALE
+}
@@ -0,0 +1,17 @@
+package com.goldberg.games2d.graphics;
+
+/**
+ * How the level's frames are put together
+ * @author antonymouse
+ * @since 0.3
+ */
+public enum RasterizerType {
+    /**
+     * Every tile chunk and sprite frame is a Java2D drawImage
+     */
+    JAVA2D,
+    /**
+     * {@link SoftwareRasterizer} composites the frame in memory, in parallel bands, and draws it with one drawImage
+     */
+    SOFTWARE
+}
@@ -0,0 +1,18 @@
+package com.goldberg.games2d.graphics;
+
+/**
+ * How much of the screen the game loop repaints every frame
+ * @author antonymouse
+ * @since 0.3
+ */
+public enum RedrawMode {
+    /**
+     * The whole screen, every frame
+     */
+    FULL,
+    /**
+     * Only the regions reported by {@link DirtyRegionTracker}. Falls back to the full repaint when the buffers can't
+     * keep their content between frames.
+     */
+    PARTIAL
+}
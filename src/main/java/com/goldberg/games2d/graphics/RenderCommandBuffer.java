@@ -0,0 +1,49 @@
+package com.goldberg.games2d.graphics;
+
+import com.google.inject.Singleton;
+
+/**
+ * Passes draw commands for the sprites and the particles (producers) to the level's drawing (consumer). There are
+ * two {@link RenderCommandList}s: the producers fill one while the consumer draws the other, {@link #swap()} trades
+ * them at the start of drawing. There is no locking: producing and drawing happen on the drawing thread, one
+ * after the other.
+ * @author antonymouse
+ * @since 0.3
+ */
+@Singleton
+public class RenderCommandBuffer {
+    private RenderCommandList producing = new RenderCommandList();
+    private RenderCommandList consuming = new RenderCommandList();
+
+    /**
+     * Queues a frame for drawing
+     * @param frameId id of the frame in the {@link TextureAtlas}
+     * @param x absolute (map) x
+     * @param y absolute (map) y
+     * @param layer the layer to draw in, see {@link RenderLayer}
+     * @param depth the position within the layer, see {@link RenderCommandList#add(int, int, int, int, int)}
+     */
+    public void submit(int frameId, int x, int y, int layer, int depth) {
+        producing.add(frameId, x, y, layer, depth);
+    }
+
+    /**
+     * Queues many frames for drawing at once, see {@link #submit(int, int, int, int, int)}
+     * @param count how many frames to queue from the start of the arrays
+     */
+    public void submitBatch(int count, int[] frameIds, int[] xs, int[] ys, int[] layers, int[] depths) {
+        producing.addAll(count, frameIds, xs, ys, layers, depths);
+    }
+
+    /**
+     * Hands over everything submitted since the last swap and starts collecting a new frame
+     * @return the commands to draw, valid until the next swap
+     */
+    public RenderCommandList swap() {
+        RenderCommandList ready = producing;
+        producing = consuming;
+        producing.clear();
+        consuming = ready;
+        return ready;
+    }
+}
@@ -0,0 +1,152 @@
+package com.goldberg.games2d.graphics;
+
+import java.util.Arrays;
+
+/**
+ * Draw commands of one frame: which {@link SpriteFrame} to draw where, in which layer. Kept in parallel primitive
+ * arrays which grow when needed and are reused frame after frame, so a steady frame allocates nothing.
+ * {@link #sort()} orders the commands by layer and by depth within the layer with a stable radix sort, the commands
+ * are then read in that order through {@link #getSorted(int)}.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class RenderCommandList {
+    private static final int INITIAL_CAPACITY = 128;
+    /**
+     * The depth takes the lower bits of the sort key, the layer the upper ones
+     */
+    private static final int DEPTH_BITS = 24;
+    private static final int DEPTH_BIAS = 1 << (DEPTH_BITS - 1);
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+    private int size;
+    private int[] frameIds = new int[INITIAL_CAPACITY];
+    private int[] xs = new int[INITIAL_CAPACITY];
+    private int[] ys = new int[INITIAL_CAPACITY];
+    private int[] layers = new int[INITIAL_CAPACITY];
+    private int[] sortKeys = new int[INITIAL_CAPACITY];
+    private int[] order = new int[INITIAL_CAPACITY];
+    private int[] scratch = new int[INITIAL_CAPACITY];
+    private final int[] counts = new int[1 << RADIX_BITS];
+
+    /**
+     * Adds a command
+     * @param frameId id of the frame in the {@link TextureAtlas}
+     * @param x absolute (map) x
+     * @param y absolute (map) y
+     * @param layer the layer to draw in, see {@link RenderLayer}
+     * @param depth the position within the layer, frames with bigger depth are drawn over the ones with smaller.
+     *              Typically the absolute y of the frame's lower edge.
+     */
+    public void add(int frameId, int x, int y, int layer, int depth) {
+        ensureCapacity(size + 1);
+        set(size++, frameId, x, y, layer, depth);
+    }
+
+    /**
+     * Adds many commands at once, growing the arrays once at most. See {@link #add(int, int, int, int, int)}.
+     * @param count how many commands to add from the start of the arrays
+     */
+    public void addAll(int count, int[] frameIds, int[] xs, int[] ys, int[] layers, int[] depths) {
+        ensureCapacity(size + count);
+        for (int i = 0; i < count; i++) {
+            set(size++, frameIds[i], xs[i], ys[i], layers[i], depths[i]);
+        }
+    }
+
+    private void set(int index, int frameId, int x, int y, int layer, int depth) {
+        frameIds[index] = frameId;
+        xs[index] = x;
+        ys[index] = y;
+        layers[index] = layer;
+        int biasedDepth = Math.max(0, Math.min(depth + DEPTH_BIAS, (1 << DEPTH_BITS) - 1));
+        sortKeys[index] = (layer << DEPTH_BITS) | biasedDepth;
+        order[index] = index;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= frameIds.length) {
+            return;
+        }
+        int capacity = Math.max(needed, frameIds.length * 2);
+        frameIds = Arrays.copyOf(frameIds, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        layers = Arrays.copyOf(layers, capacity);
+        sortKeys = Arrays.copyOf(sortKeys, capacity);
+        order = Arrays.copyOf(order, capacity);
+        scratch = new int[capacity];
+    }
+
+    /**
+     * Orders the commands by layer, then by depth. Commands with the same layer and depth keep the order they were
+     * added in. Least significant digit first radix sort, a byte per pass; passes where all the keys have the same
+     * byte are skipped.
+     */
+    public void sort() {
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        for (int shift = 0; shift < Integer.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[(sortKeys[i] >>> shift) & RADIX_MASK]++;
+            }
+            if (size == 0 || counts[(sortKeys[0] >>> shift) & RADIX_MASK] == size) {
+                continue; // nothing to reorder by this byte
+            }
+            // counts become the first position of each bucket
+            int position = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                int count = counts[bucket];
+                counts[bucket] = position;
+                position += count;
+            }
+            for (int i = 0; i < size; i++) {
+                int command = order[i];
+                scratch[counts[(sortKeys[command] >>> shift) & RADIX_MASK]++] = command;
+            }
+            int[] sorted = scratch;
+            scratch = order;
+            order = sorted;
+        }
+    }
+
+    /**
+     * @param rank position in the drawing order
+     * @return index of the command to draw at that position. Until {@link #sort()} is called, the order of adding.
+     */
+    public int getSorted(int rank) {
+        return order[rank];
+    }
+
+    /**
+     * Forgets the commands, keeps the memory
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the number of commands
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getFrameId(int index) {
+        return frameIds[index];
+    }
+
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    public int getY(int index) {
+        return ys[index];
+    }
+
+    public int getLayer(int index) {
+        return layers[index];
+    }
+}
@@ -0,0 +1,30 @@
+package com.goldberg.games2d.graphics;
+
+/**
+ * Layers of a frame, drawn in the order of declaration. Within a layer the frames are drawn top to bottom by their
+ * lower edge, so whatever stands closer to the viewer covers what stands behind it.
+ * @author antonymouse
+ * @since 0.3
+ */
+public enum RenderLayer {
+    /**
+     * The level's map and whatever lies flat on it
+     */
+    BACKGROUND,
+    /**
+     * Decals on the ground: shadows, ripples, trails
+     */
+    GROUND,
+    /**
+     * Characters
+     */
+    SPRITES,
+    /**
+     * Things in front of the characters
+     */
+    FOREGROUND,
+    /**
+     * Information for the player, on top of everything
+     */
+    HUD
+}
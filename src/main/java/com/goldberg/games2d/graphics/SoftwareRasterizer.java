@@ -0,0 +1,244 @@
+package com.goldberg.games2d.graphics;
+
+import com.goldberg.games2d.hardware.ImportedImage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders the level without Java2D: tiles and sprite frames are decoded once into ARGB int arrays and composited
+ * into an int array framebuffer with plain copy and alpha blend loops. The framebuffer is split into horizontal
+ * bands rendered in parallel on a ForkJoin pool, each band touches only its own rows, so there is no locking.
+ * The frame is rendered in logical pixels, from the images as they were loaded, and goes to the screen with a single
+ * drawImage, which scales it if the screen isn't at the logical resolution.
+ * The tiles are copied as opaque, so there is nothing to see behind them: the background {@link ParallaxLayer}s aren't
+ * drawn. The foreground ones are drawn by the level over the finished frame.
+ * Not thread-safe, one frame at a time.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class SoftwareRasterizer {
+    private static final Logger logger = LogManager.getLogger();
+    /**
+     * Bands thinner than that aren't worth a task
+     */
+    private static final int MIN_BAND_HEIGHT = 16;
+    private final ForkJoinPool pool;
+    /**
+     * Decoded pixels by the image they were decoded from. A converted image (e.g. after a display change) is a new
+     * image and gets decoded again, the old one is forgotten once it's garbage collected.
+     */
+    private final Map<BufferedImage, int[]> decoded = new WeakHashMap<>();
+    private BufferedImage framebuffer;
+    private int[] pixels;
+    private int width, height;
+    private Band[] bands = new Band[0];
+    private final RecursiveAction allBands = new RecursiveAction() {
+        @Override
+        protected void compute() {
+            invokeAll(bands);
+        }
+    };
+
+    // the frame being rendered, read by the bands
+    private Camera camera;
+    private ImportedImage[][] tileImages;
+    private int[][][] tilePixels;
+    private int tileSize;
+    private RenderCommandList commands;
+    private TextureAtlas atlas;
+    private int[][] commandPixels = new int[0][];
+
+    /**
+     * @param threads how many threads render the bands, 0 for as many as there are processors
+     */
+    public SoftwareRasterizer(int threads) {
+        pool = new ForkJoinPool((threads > 0) ? threads : Runtime.getRuntime().availableProcessors());
+        logger.info("software rasterizer with {} threads", pool.getParallelism());
+    }
+
+    /**
+     * Renders the visible part of the level and draws it on the graphics
+     * @param g where the frame goes, in screen coordinates
+     * @param camera the visible part of the level
+     * @param tileImages the map's tiles, y first
+     * @param tileSize size of the tiles in pixels
+     * @param commands the sprites' frames, sorted
+     * @param atlas where the frames are
+     * @param scale screen pixels per logical pixel
+     */
+    public void render(@NotNull Graphics2D g, @NotNull Camera camera, @NotNull ImportedImage[][] tileImages,
+                       int tileSize, @NotNull RenderCommandList commands, @NotNull TextureAtlas atlas,
+                       float scale) {
+        prepareFramebuffer(camera.getWidth(), camera.getHeight());
+        this.camera = camera;
+        this.tileImages = tileImages;
+        this.tileSize = tileSize;
+        this.commands = commands;
+        this.atlas = atlas;
+        decodeTiles();
+        decodeCommands();
+        allBands.reinitialize();
+        for (Band band : bands) {
+            band.reinitialize();
+        }
+        pool.invoke(allBands);
+        if (scale == 1) {
+            g.drawImage(framebuffer, 0, 0, null);
+        } else {
+            g.drawImage(framebuffer, 0, 0, Math.round(width * scale), Math.round(height * scale), null);
+        }
+    }
+
+    private void prepareFramebuffer(int frameWidth, int frameHeight) {
+        if (framebuffer != null && frameWidth == width && frameHeight == height) {
+            return;
+        }
+        width = frameWidth;
+        height = frameHeight;
+        framebuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) framebuffer.getRaster().getDataBuffer()).getData();
+        int bandCount = Math.max(1, Math.min(pool.getParallelism() * 2, height / MIN_BAND_HEIGHT));
+        bands = new Band[bandCount];
+        for (int i = 0; i < bandCount; i++) {
+            bands[i] = new Band(height * i / bandCount, height * (i + 1) / bandCount);
+        }
+    }
+
+    /**
+     * Looks up the pixels of the tiles in the camera's view only, the bands never read the others
+     */
+    private void decodeTiles() {
+        if (tilePixels == null || tilePixels.length != tileImages.length) {
+            tilePixels = new int[tileImages.length][][];
+        }
+        int firstRow = Math.max(Math.floorDiv(camera.getY(), tileSize), 0);
+        int lastRow = Math.min(Math.floorDiv(camera.getY() + height - 1, tileSize), tileImages.length - 1);
+        int firstColumn = Math.max(Math.floorDiv(camera.getX(), tileSize), 0);
+        for (int y = firstRow; y <= lastRow; y++) {
+            if (tilePixels[y] == null || tilePixels[y].length != tileImages[y].length) {
+                tilePixels[y] = new int[tileImages[y].length][];
+            }
+            int lastColumn = Math.min(Math.floorDiv(camera.getX() + width - 1, tileSize), tileImages[y].length - 1);
+            for (int x = firstColumn; x <= lastColumn; x++) {
+                tilePixels[y][x] = decode(tileImages[y][x].getSource());
+            }
+        }
+    }
+
+    private void decodeCommands() {
+        if (commandPixels.length < commands.size()) {
+            commandPixels = new int[Math.max(commands.size(), commandPixels.length * 2)][];
+        }
+        for (int i = 0; i < commands.size(); i++) {
+            commandPixels[i] = decode(atlas.getFrame(commands.getFrameId(i)).getImage().getSource());
+        }
+    }
+
+    private int[] decode(BufferedImage image) {
+        int[] result = decoded.get(image);
+        if (result == null) {
+            result = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+            decoded.put(image, result);
+        }
+        return result;
+    }
+
+    /**
+     * Rows from top (inclusive) to bottom (exclusive) of the framebuffer
+     */
+    private class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int top, bottom;
+
+        Band(int top, int bottom) {
+            this.top = top;
+            this.bottom = bottom;
+        }
+
+        @Override
+        protected void compute() {
+            Arrays.fill(pixels, top * width, bottom * width, 0);
+            drawTiles();
+            for (int rank = 0; rank < commands.size(); rank++) {
+                int i = commands.getSorted(rank);
+                SpriteFrame frame = atlas.getFrame(commands.getFrameId(i));
+                BufferedImage source = frame.getImage().getSource();
+                blend(commandPixels[i], source.getWidth(), frame.getSourceX(), frame.getSourceY(),
+                        frame.getWidth(), frame.getHeight(),
+                        commands.getX(i) - camera.getX(), commands.getY(i) - camera.getY());
+            }
+        }
+
+        private void drawTiles() {
+            int mapTop = camera.getY() + top;
+            int mapBottom = camera.getY() + bottom;
+            int firstRow = Math.max(Math.floorDiv(mapTop, tileSize), 0);
+            int lastRow = Math.min(Math.floorDiv(mapBottom - 1, tileSize), tilePixels.length - 1);
+            int firstColumn = Math.max(Math.floorDiv(camera.getX(), tileSize), 0);
+            for (int row = firstRow; row <= lastRow; row++) {
+                int lastColumn = Math.min(Math.floorDiv(camera.getX() + width - 1, tileSize),
+                        tilePixels[row].length - 1);
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    copy(tilePixels[row][column], tileSize, tileSize,
+                            column * tileSize - camera.getX(), row * tileSize - camera.getY());
+                }
+            }
+        }
+
+        /**
+         * Copies an opaque image, row by row, clipped to the band
+         */
+        private void copy(int[] source, int sourceWidth, int sourceHeight, int x, int y) {
+            int firstColumn = Math.max(0, -x);
+            int lastColumn = Math.min(sourceWidth, width - x);
+            int firstRow = Math.max(0, top - y);
+            int lastRow = Math.min(sourceHeight, bottom - y);
+            int length = lastColumn - firstColumn;
+            if (length <= 0) {
+                return;
+            }
+            for (int row = firstRow; row < lastRow; row++) {
+                System.arraycopy(source, row * sourceWidth + firstColumn, pixels, (y + row) * width + x + firstColumn,
+                        length);
+            }
+        }
+
+        /**
+         * Blends a part of an ARGB image over the framebuffer, clipped to the band
+         */
+        private void blend(int[] source, int sourceStride, int sourceX, int sourceY, int partWidth, int partHeight,
+                           int x, int y) {
+            int firstColumn = Math.max(0, -x);
+            int lastColumn = Math.min(partWidth, width - x);
+            int firstRow = Math.max(0, top - y);
+            int lastRow = Math.min(partHeight, bottom - y);
+            for (int row = firstRow; row < lastRow; row++) {
+                int sourceIndex = (sourceY + row) * sourceStride + sourceX + firstColumn;
+                int targetIndex = (y + row) * width + x + firstColumn;
+                for (int column = firstColumn; column < lastColumn; column++, sourceIndex++, targetIndex++) {
+                    int argb = source[sourceIndex];
+                    int alpha = argb >>> 24;
+                    if (alpha == 0xff) {
+                        pixels[targetIndex] = argb;
+                    } else if (alpha != 0) {
+                        int target = pixels[targetIndex];
+                        int inverse = 0xff - alpha;
+                        int redBlue = (((argb & 0xff00ff) * alpha + (target & 0xff00ff) * inverse) >>> 8) & 0xff00ff;
+                        int green = (((argb & 0x00ff00) * alpha + (target & 0x00ff00) * inverse) >>> 8) & 0x00ff00;
+                        pixels[targetIndex] = redBlue | green;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.goldberg.games2d.graphics;
+
+import com.goldberg.games2d.hardware.ImportedImage;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+
+/**
+ * One frame of an animation: a rectangle within an image. Until {@link TextureAtlas#pack()} the image holds just
+ * this frame, after that it is an atlas page shared with other frames.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class SpriteFrame {
+    private final int id;
+    private final int width, height;
+    private volatile ImportedImage image;
+    private volatile int sourceX, sourceY;
+
+    SpriteFrame(int id, ImportedImage image) {
+        this.id = id;
+        this.image = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+    }
+
+    /**
+     * @return the frame's number in its {@link TextureAtlas}
+     */
+    public int getId() {
+        return id;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Draws the frame
+     * @param g the graphics to use
+     * @param x screen coordinate x to place the frame
+     * @param y screen coordinate y to place the frame
+     */
+    public void draw(@NotNull Graphics2D g, int x, int y) {
+        image.draw(g, x, y, sourceX, sourceY, width, height);
+    }
+
+    ImportedImage getImage() {
+        return image;
+    }
+
+    int getSourceX() {
+        return sourceX;
+    }
+
+    int getSourceY() {
+        return sourceY;
+    }
+
+    /**
+     * Moves the frame to a new place, typically an atlas page
+     */
+    void bind(ImportedImage image, int sourceX, int sourceY) {
+        this.sourceX = sourceX;
+        this.sourceY = sourceY;
+        this.image = image;
+    }
+}
@@ -0,0 +1,194 @@
+package com.goldberg.games2d.graphics;
+
+import com.goldberg.games2d.hardware.ImageImporter;
+import com.goldberg.games2d.hardware.ImportedImage;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Keeps all the animation frames of a level in a few big images (pages) instead of one small image per frame.
+ * Frames are added one by one as the animations load, identical frames are stored once. Until {@link #pack()} is
+ * called each frame lives in its own image; packing places them onto pages with a simple shelf algorithm (tallest
+ * frames first, left to right, a new shelf when a row is full) and reports how much of the pages' area is used.
+ * @author antonymouse
+ * @since 0.3
+ */
+@Singleton
+public class TextureAtlas {
+    /**
+     * Width and height of a page. Frames bigger than that get a page of their own.
+     */
+    public static final int PAGE_SIZE = 1024;
+    /**
+     * Empty pixels between the frames, so filtering while scaling doesn't bleed the neighbours in
+     */
+    private static final int PADDING = 1;
+    private static final Logger logger = LogManager.getLogger();
+    private final ImageImporter importer;
+    private final List<SpriteFrame> frames = new ArrayList<>();
+    /**
+     * Frames by the hash of their pixels, to find duplicates
+     */
+    private final Map<Integer, List<SpriteFrame>> framesByHash = new HashMap<>();
+    private final List<ImportedImage> pages = new ArrayList<>();
+    private int duplicates;
+    private double efficiency;
+
+    @Inject
+    public TextureAtlas(ImageImporter importer) {
+        this.importer = importer;
+    }
+
+    /**
+     * Adds a frame, unless there is an identical one already
+     * @param source the frame as it was loaded
+     * @return the frame, possibly shared with other animations
+     */
+    public synchronized SpriteFrame add(@NotNull BufferedImage source) {
+        int[] pixels = pixels(source);
+        int hash = 31 * Arrays.hashCode(pixels) + source.getWidth();
+        List<SpriteFrame> candidates = framesByHash.computeIfAbsent(hash, h -> new ArrayList<>());
+        for (SpriteFrame candidate : candidates) {
+            if (candidate.getWidth() == source.getWidth() && candidate.getHeight() == source.getHeight() &&
+                    Arrays.equals(pixels, pixels(candidate))) {
+                duplicates++;
+                return candidate;
+            }
+        }
+        SpriteFrame frame = new SpriteFrame(frames.size(), importer.importImage(source, false));
+        frames.add(frame);
+        candidates.add(frame);
+        return frame;
+    }
+
+    /**
+     * @param id the frame's id, see {@link SpriteFrame#getId()}
+     * @return the frame
+     */
+    public synchronized SpriteFrame getFrame(int id) {
+        return frames.get(id);
+    }
+
+    /**
+     * @return how many distinct frames are in the atlas
+     */
+    public synchronized int size() {
+        return frames.size();
+    }
+
+    /**
+     * Places all the frames onto as few pages as possible and moves the frames there
+     */
+    public synchronized void pack() {
+        if (frames.isEmpty()) {
+            return;
+        }
+        List<SpriteFrame> byHeight = new ArrayList<>(frames);
+        // the frames which don't fit a page go first, one page each, then the rest tallest first
+        byHeight.sort(Comparator.comparing(TextureAtlas::isOversized).reversed()
+                .thenComparing(Comparator.comparingInt(SpriteFrame::getHeight).reversed())
+                .thenComparing(Comparator.comparingInt(SpriteFrame::getWidth).reversed()));
+        List<ImportedImage> oldImages = new ArrayList<>(pages);
+        frames.stream().map(SpriteFrame::getImage).filter(image -> !pages.contains(image))
+                .forEach(oldImages::add);
+        pages.clear();
+
+        long usedArea = 0, pagesArea = 0;
+        int start = 0;
+        while (start < byHeight.size()) {
+            // lay out one page: the frames from start to end, at the positions in x[] and y[]
+            boolean oversized = isOversized(byHeight.get(start));
+            int pageWidth = oversized ? byHeight.get(start).getWidth() : PAGE_SIZE;
+            int pageHeight = oversized ? byHeight.get(start).getHeight() : PAGE_SIZE;
+            int[] x = new int[byHeight.size()], y = new int[byHeight.size()];
+            int shelfX = 0, shelfY = 0, shelfHeight = 0, usedHeight = 0;
+            int end = start;
+            for (; end < byHeight.size() && (end == start || !oversized); end++) {
+                SpriteFrame frame = byHeight.get(end);
+                if (shelfX + frame.getWidth() > pageWidth) {
+                    shelfY += shelfHeight + PADDING;
+                    shelfX = 0;
+                    shelfHeight = 0;
+                }
+                if (shelfY + frame.getHeight() > pageHeight) {
+                    break;
+                }
+                x[end] = shelfX;
+                y[end] = shelfY;
+                shelfX += frame.getWidth() + PADDING;
+                shelfHeight = Math.max(shelfHeight, frame.getHeight());
+                usedHeight = shelfY + shelfHeight;
+                usedArea += (long) frame.getWidth() * frame.getHeight();
+            }
+            // the last page doesn't need to be taller than its content
+            BufferedImage page = new BufferedImage(pageWidth, usedHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = page.createGraphics();
+            try {
+                for (int i = start; i < end; i++) {
+                    SpriteFrame frame = byHeight.get(i);
+                    g.drawImage(frame.getImage().getSource(), x[i], y[i], x[i] + frame.getWidth(),
+                            y[i] + frame.getHeight(), frame.getSourceX(), frame.getSourceY(),
+                            frame.getSourceX() + frame.getWidth(), frame.getSourceY() + frame.getHeight(), null);
+                }
+            } finally {
+                g.dispose();
+            }
+            ImportedImage importedPage = importer.importImage(page, false);
+            pages.add(importedPage);
+            pagesArea += (long) pageWidth * usedHeight;
+            for (int i = start; i < end; i++) {
+                byHeight.get(i).bind(importedPage, x[i], y[i]);
+            }
+            start = end;
+        }
+        oldImages.forEach(importer::release);
+        efficiency = (double) usedArea / pagesArea;
+        logger.info("packed {} frames ({} duplicates skipped) into {} atlas pages, {}% of the area used",
+                frames.size(), duplicates, pages.size(), String.format("%.1f", efficiency * 100));
+    }
+
+    /**
+     * @return how many pages the last {@link #pack()} made
+     */
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * @return how many frames were found identical to the ones added before
+     */
+    public synchronized int getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return the share of the pages' area taken by the frames after the last {@link #pack()}, 0..1
+     */
+    public synchronized double getEfficiency() {
+        return efficiency;
+    }
+
+    /**
+     * @return true if the frame is wider or taller than a page, so it gets a page of its own
+     */
+    private static boolean isOversized(SpriteFrame frame) {
+        return frame.getWidth() > PAGE_SIZE || frame.getHeight() > PAGE_SIZE;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static int[] pixels(SpriteFrame frame) {
+        return frame.getImage().getSource().getRGB(frame.getSourceX(), frame.getSourceY(), frame.getWidth(),
+                frame.getHeight(), null, 0, frame.getWidth());
+    }
+}
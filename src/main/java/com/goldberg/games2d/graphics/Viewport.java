@@ -0,0 +1,67 @@
+package com.goldberg.games2d.graphics;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A part of the screen showing the level through its own {@link Camera}, e.g. one half of a split screen. The
+ * viewports share everything else: the level's simulation, the frames the sprites submitted and the caches; each
+ * only draws what its camera sees.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class Viewport {
+    private final Camera camera = new Camera();
+    private int x, y, width, height;
+
+    /**
+     * @return the camera looking at the level for this viewport
+     */
+    @NotNull
+    public Camera getCamera() {
+        return camera;
+    }
+
+    /**
+     * Places the viewport on the screen and sizes the camera's view to it
+     * @param x left side on the screen, pixels
+     * @param y top side on the screen, pixels
+     * @param width width on the screen, pixels
+     * @param height height on the screen, pixels
+     * @param scale screen pixels per map pixel
+     */
+    public void setBounds(int x, int y, int width, int height, float scale) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        camera.setViewportSize((int) Math.ceil(width / scale), (int) Math.ceil(height / scale));
+    }
+
+    /**
+     * @return left side on the screen, pixels
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return top side on the screen, pixels
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * @return width on the screen, pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height on the screen, pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+}
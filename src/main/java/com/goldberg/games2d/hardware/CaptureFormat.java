@@ -0,0 +1,22 @@
+package com.goldberg.games2d.hardware;
+
+/**
+ * How {@link FrameRecorder} writes the captured frames
+ * @author antonymouse
+ * @since 0.3
+ */
+public enum CaptureFormat {
+    /**
+     * Nothing is captured
+     */
+    OFF,
+    /**
+     * One PNG file per frame, numbered by the frame, so the dropped frames show as gaps in the sequence
+     */
+    PNG,
+    /**
+     * All the frames in one file, one after another, each width * height 32-bit big-endian 0RGB pixels; no encoding,
+     * the cheapest to write
+     */
+    RAW
+}
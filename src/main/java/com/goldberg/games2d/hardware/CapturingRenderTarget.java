@@ -0,0 +1,123 @@
+package com.goldberg.games2d.hardware;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.awt.event.KeyListener;
+import java.awt.image.BufferedImage;
+
+/**
+ * Records the frames another render target shows. The game draws into an image in memory, which keeps its
+ * contents, and each shown frame is copied from there to the real target in one blit and handed to a
+ * {@link FrameRecorder}. The image never loses its contents, the losses of the real target are handled while
+ * copying the frame to it.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class CapturingRenderTarget implements RenderTarget {
+    private final RenderTarget target;
+    private final FrameRecorder recorder;
+    private BufferedImage canvas;
+    private long frames;
+
+    /**
+     * @param target where the frames are shown
+     * @param recorder writes the frames
+     */
+    public CapturingRenderTarget(@NotNull RenderTarget target, @NotNull FrameRecorder recorder) {
+        this.target = target;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public void open() {
+        target.open();
+        canvas = new BufferedImage(target.getWidth(), target.getHeight(), BufferedImage.TYPE_INT_RGB);
+        recorder.open(canvas.getWidth(), canvas.getHeight());
+    }
+
+    @Override
+    public void close() {
+        recorder.close();
+        target.close();
+        canvas = null;
+    }
+
+    @Override
+    public boolean startFrame() {
+        return canvas != null && target.startFrame();
+    }
+
+    @Override
+    public Graphics2D getDrawGraphics() {
+        return canvas.createGraphics();
+    }
+
+    /**
+     * The image in memory doesn't lose its content
+     */
+    @Override
+    public boolean contentsRestored() {
+        return false;
+    }
+
+    /**
+     * The image in memory doesn't lose its content
+     */
+    @Override
+    public boolean contentsLost() {
+        return false;
+    }
+
+    /**
+     * Copies the frame to the real target, shows it there and records it
+     */
+    @Override
+    public void show() {
+        do {
+            Graphics2D g = target.getDrawGraphics();
+            try {
+                g.drawImage(canvas, 0, 0, null);
+            } finally {
+                g.dispose();
+            }
+        } while (target.contentsRestored());
+        if (!target.contentsLost()) {
+            target.show();
+        }
+        recorder.record(canvas, frames++);
+    }
+
+    @Override
+    public int getWidth() {
+        return target.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return target.getHeight();
+    }
+
+    @Override
+    public GraphicsConfiguration getGraphicsConfiguration() {
+        return target.getGraphicsConfiguration();
+    }
+
+    /**
+     * @return 1, the image keeps the last frame
+     */
+    @Override
+    public int getBufferHistoryDepth() {
+        return 1;
+    }
+
+    @Override
+    public boolean isFrameRateLimited() {
+        return target.isFrameRateLimited();
+    }
+
+    @Override
+    public void addKeyListener(KeyListener listener) {
+        target.addKeyListener(listener);
+    }
+}
@@ -0,0 +1,21 @@
+package com.goldberg.games2d.hardware;
+
+/**
+ * Available implementations of {@link GameClock}
+ * @author antonymouse
+ * @since 0.3
+ */
+public enum ClockMode {
+    /**
+     * {@link RealTimeClock}, the game runs in real time
+     */
+    REAL,
+    /**
+     * {@link VirtualClock}, every frame advances the game by the same fixed step however long it took to draw
+     */
+    VIRTUAL,
+    /**
+     * {@link FastClock}, the ticks run back to back, as fast as they compute
+     */
+    FAST
+}
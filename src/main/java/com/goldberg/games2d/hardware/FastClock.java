@@ -0,0 +1,40 @@
+package com.goldberg.games2d.hardware;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock which stands still except for the game loop and never makes it wait: a wait jumps it to the deadline
+ * at once, and a frame drawn moves it on to the next tick, so each frame shows one tick and the ticks run back to
+ * back, as fast as they compute. Without drawing, a level runs as many ticks per second as the CPU manages.
+ * The game time starts at a fixed epoch, so the runs repeat.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class FastClock implements GameClock {
+    private final AtomicLong now = new AtomicLong();
+
+    @Override
+    public long nanoTime() {
+        return now.get();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return VirtualClock.EPOCH;
+    }
+
+    @Override
+    public void waitUntil(long deadline) {
+        now.accumulateAndGet(deadline, Math::max);
+    }
+
+    @Override
+    public void frameEnded(long nextTickAt) {
+        waitUntil(nextTickAt);
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return false;
+    }
+}
@@ -0,0 +1,136 @@
+package com.goldberg.games2d.hardware;
+
+/**
+ * Holds the game loop to a frame rate cap and measures how steady the frames come. The frames are due on a fixed
+ * grid of deadlines, so a late frame doesn't push the later ones back. The waits are the {@link GameClock}'s: the
+ * real clock waits precisely, the others jump to the deadlines.
+ * Not thread-safe, belongs to the thread it paces.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class FramePacer {
+    private final GameClock clock;
+    private final long frameNanos;
+    private long nextDeadline;
+    private long lastFrameAt;
+    // the intervals between the frames, Welford's running mean and sum of squared differences, ns
+    private long intervals;
+    private double intervalMean, intervalSquares;
+    private long longestInterval;
+    // how late the waits woke up after their deadlines, ns
+    private long waits;
+    private long totalLateness, longestLateness;
+    private long missedDeadlines;
+
+    /**
+     * @param clock the clock to wait on and measure with
+     * @param frameNanos the shortest frame, ns, 0 for no cap (the intervals are still measured)
+     */
+    public FramePacer(GameClock clock, long frameNanos) {
+        this.clock = clock;
+        this.frameNanos = Math.max(0, frameNanos);
+    }
+
+    /**
+     * @param clock the clock to wait on and measure with
+     * @param frameRate the frames per second at most, 0 for no cap
+     * @return the pacer for the rate
+     */
+    public static FramePacer forFrameRate(GameClock clock, int frameRate) {
+        return new FramePacer(clock, frameRate > 0 ? 1_000_000_000L / frameRate : 0);
+    }
+
+    /**
+     * Waits for the next frame's deadline, if the frame rate is capped, and counts the frame just finished
+     */
+    public void endFrame() {
+        if (frameNanos > 0) {
+            long now = clock.nanoTime();
+            if (nextDeadline == 0 || now - nextDeadline > frameNanos) {
+                // the first frame, or a frame more than a frame late: start the grid over instead of rushing
+                if (nextDeadline != 0) {
+                    missedDeadlines++;
+                }
+                nextDeadline = now;
+            } else {
+                waitUntil(nextDeadline);
+            }
+            nextDeadline += frameNanos;
+        }
+        long frameAt = clock.nanoTime();
+        if (lastFrameAt != 0) {
+            addInterval(frameAt - lastFrameAt);
+        }
+        lastFrameAt = frameAt;
+    }
+
+    /**
+     * Forgets when the last frame was, the loop stopped on purpose (e.g. idled) and the pause isn't a frame interval
+     */
+    public void restart() {
+        lastFrameAt = 0;
+        nextDeadline = 0;
+    }
+
+    /**
+     * Waits for a deadline of the caller's own, e.g. the next simulation tick, and counts how late it woke up
+     * @param deadline the clock's time to wait for
+     */
+    public void waitUntil(long deadline) {
+        clock.waitUntil(deadline);
+        long lateness = clock.nanoTime() - deadline;
+        waits++;
+        totalLateness += lateness;
+        longestLateness = Math.max(longestLateness, lateness);
+    }
+
+    private void addInterval(long interval) {
+        intervals++;
+        double difference = interval - intervalMean;
+        intervalMean += difference / intervals;
+        intervalSquares += difference * (interval - intervalMean);
+        longestInterval = Math.max(longestInterval, interval);
+    }
+
+    /**
+     * @return the frames' mean duration, ms
+     */
+    public double getMeanFrameMillis() {
+        return intervalMean / 1e6;
+    }
+
+    /**
+     * @return the variance of the frames' durations, ms squared
+     */
+    public double getFrameVarianceMillis() {
+        return intervals > 1 ? intervalSquares / (intervals - 1) / 1e12 : 0;
+    }
+
+    /**
+     * @return the longest frame, ms
+     */
+    public double getLongestFrameMillis() {
+        return longestInterval / 1e6;
+    }
+
+    /**
+     * @return how late the waits woke up after the deadlines on average, µs
+     */
+    public double getMeanLatenessMicros() {
+        return waits > 0 ? totalLateness / (double) waits / 1e3 : 0;
+    }
+
+    /**
+     * @return the latest a wait woke up after its deadline, µs
+     */
+    public double getLongestLatenessMicros() {
+        return longestLateness / 1e3;
+    }
+
+    /**
+     * @return how many frames took more than a whole frame longer than the cap
+     */
+    public long getMissedDeadlines() {
+        return missedDeadlines;
+    }
+}
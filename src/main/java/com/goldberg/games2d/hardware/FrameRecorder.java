@@ -0,0 +1,181 @@
+package com.goldberg.games2d.hardware;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the frames of the game to disk without holding up the game loop. A frame is copied into one of a few
+ * preallocated buffers and queued for a background writer thread, which encodes and writes it, then returns the
+ * buffer to the pool. When the writer falls behind and all the buffers are queued, new frames are dropped (and
+ * counted) rather than waited for: the game loop never blocks on the disk or the encoding.
+ * {@link #record(BufferedImage, long)} belongs to the game loop thread.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class FrameRecorder {
+    private static final Logger logger = LogManager.getLogger();
+    private static final String RAW_FILE_NAME = "frames.raw";
+    /**
+     * How long the writer may take to finish the queued frames at the end, ms
+     */
+    private static final long CLOSE_TIMEOUT = 10000;
+    private final CaptureFormat format;
+    private final Path directory;
+    private final int buffers;
+    private BlockingQueue<Frame> free;
+    private BlockingQueue<Frame> queued;
+    private Thread writer;
+    private volatile boolean closing;
+    private int width, height;
+    private long recorded, dropped;
+    private volatile long written;
+
+    /**
+     * One pooled buffer: the pixels and an image over them for the encoder
+     */
+    private static class Frame {
+        final BufferedImage image;
+        final int[] pixels;
+        long number;
+
+        Frame(int width, int height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+    }
+
+    /**
+     * @param format how to write the frames, not {@link CaptureFormat#OFF}
+     * @param directory where the frames go, created if needed
+     * @param buffers how many frames may wait for the writer before the new ones are dropped
+     */
+    public FrameRecorder(@NotNull CaptureFormat format, @NotNull String directory, int buffers) {
+        this.format = format;
+        this.directory = Path.of(directory);
+        this.buffers = Math.max(1, buffers);
+    }
+
+    /**
+     * Allocates the buffers and starts the writer
+     * @param frameWidth width of the frames in pixels
+     * @param frameHeight height of the frames in pixels
+     */
+    public void open(int frameWidth, int frameHeight) {
+        width = frameWidth;
+        height = frameHeight;
+        free = new ArrayBlockingQueue<>(buffers);
+        queued = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            free.add(new Frame(width, height));
+        }
+        writer = new Thread(this::write, "frame-writer");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("capturing {}x{} frames as {} into {}, {} buffers", width, height, format,
+                directory.toAbsolutePath(), buffers);
+    }
+
+    /**
+     * Queues a copy of the frame for writing, or drops it if all the buffers are taken. Never blocks.
+     * @param frame the frame, TYPE_INT_RGB of the size given to {@link #open(int, int)}
+     * @param number the frame's number in the game
+     */
+    public void record(@NotNull BufferedImage frame, long number) {
+        Frame buffer = free.poll();
+        if (buffer == null) {
+            dropped++;
+            return;
+        }
+        int[] source = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        System.arraycopy(source, 0, buffer.pixels, 0, buffer.pixels.length);
+        buffer.number = number;
+        // can't fail, there are no more buffers than the queue takes
+        queued.offer(buffer);
+        recorded++;
+    }
+
+    /**
+     * @return how many frames were dropped because the writer was behind
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Lets the writer finish the queued frames and stops it
+     */
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        closing = true;
+        try {
+            writer.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("captured {} frames, {} written, {} dropped", recorded, written, dropped);
+        writer = null;
+    }
+
+    private void write() {
+        FileChannel raw = null;
+        ByteBuffer bytes = null;
+        try {
+            Files.createDirectories(directory);
+            if (format == CaptureFormat.RAW) {
+                raw = FileChannel.open(directory.resolve(RAW_FILE_NAME), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                bytes = ByteBuffer.allocateDirect(width * height * Integer.BYTES);
+            }
+            while (!closing || !queued.isEmpty()) {
+                Frame frame = queued.poll(100, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    continue;
+                }
+                try {
+                    if (raw != null) {
+                        bytes.clear();
+                        bytes.asIntBuffer().put(frame.pixels);
+                        while (bytes.hasRemaining()) {
+                            raw.write(bytes);
+                        }
+                    } else {
+                        ImageIO.write(frame.image, "png",
+                                new File(directory.toFile(), String.format("frame_%06d.png", frame.number)));
+                    }
+                    written++;
+                } finally {
+                    free.offer(frame);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("unable to write the captured frames, capturing stops", e);
+        } catch (InterruptedException e) {
+            logger.error("the frame writer got interrupted, capturing stops", e);
+        } finally {
+            if (raw != null) {
+                try {
+                    raw.close();
+                } catch (IOException e) {
+                    logger.error("unable to close the captured frames' file", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.goldberg.games2d.hardware;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyListener;
+import java.awt.image.BufferStrategy;
+
+/**
+ * Draws on the default screen in the full screen mode, through a {@link BufferStrategy} of an undecorated frame.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class FullScreenRenderTarget implements RenderTarget {
+    private static final Logger logger = LogManager.getLogger();
+    private GraphicsDevice device; // the default screen, need to keep the reference to restore at the end (todo)
+    private BufferStrategy strategy;
+    private final int displayWidth, displayHeight;
+
+    /**
+     * @param displayWidth width of the display mode to switch to, 0 to keep the desktop's mode
+     * @param displayHeight height of the display mode to switch to, 0 to keep the desktop's mode
+     */
+    public FullScreenRenderTarget(int displayWidth, int displayHeight) {
+        this.displayWidth = displayWidth;
+        this.displayHeight = displayHeight;
+    }
+
+    @Override
+    public void open() {
+        GraphicsEnvironment environment = GraphicsEnvironment.getLocalGraphicsEnvironment();
+        device = environment.getDefaultScreenDevice();
+        final JFrame frame = new JFrame();
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setUndecorated(true);
+        frame.setIgnoreRepaint(true);
+        frame.setResizable(false);
+
+        device.setFullScreenWindow(frame);
+
+        if (displayWidth > 0 && displayHeight > 0 && device.isDisplayChangeSupported())
+        {
+            DisplayMode displayMode = new DisplayMode(displayWidth, displayHeight, 32, 0);
+            logger.debug("display mode set ok");
+            try {
+                device.setDisplayMode(displayMode);
+            }
+            catch (IllegalArgumentException e) {
+                logger.debug("Unable to set display mode we wanted",e);
+            }
+            // fix for mac os x
+            frame.setSize(displayMode.getWidth(), displayMode.getHeight());
+        }
+        frame.createBufferStrategy(2);
+    }
+
+    @Override
+    public boolean startFrame() {
+        strategy = getWindowBufferStrategy();
+        return strategy != null;
+    }
+
+    @Override
+    public Graphics2D getDrawGraphics() {
+        return (Graphics2D) strategy.getDrawGraphics();
+    }
+
+    @Override
+    public boolean contentsRestored() {
+        return strategy.contentsRestored();
+    }
+
+    @Override
+    public boolean contentsLost() {
+        return strategy.contentsLost();
+    }
+
+    @Override
+    public void show() {
+        strategy.show();
+        // Sync the display on some systems.
+        // (on Linux, this fixes event queue problems)
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    /**
+     * The partial redraw relies on the back buffer still holding a frame we painted before. How old that frame is
+     * depends on the way the strategy shows the buffers.
+     */
+    @Override
+    public int getBufferHistoryDepth() {
+        BufferStrategy currentStrategy = getWindowBufferStrategy();
+        if(currentStrategy == null){
+            return 0;
+        }
+        BufferCapabilities capabilities = currentStrategy.getCapabilities();
+        BufferCapabilities.FlipContents flipContents = capabilities.getFlipContents();
+        logger.debug("page flipping {}, flip contents {}",capabilities.isPageFlipping(), flipContents);
+        if(!capabilities.isPageFlipping() || flipContents == BufferCapabilities.FlipContents.COPIED){
+            // the back buffer is copied to the screen and keeps what we painted in the last frame
+            return 1;
+        } else if (flipContents == BufferCapabilities.FlipContents.PRIOR) {
+            // the back buffer gets what was on the screen, that is the frame before the last one
+            return 2;
+        }
+        // undefined or cleared back buffer
+        return 0;
+    }
+
+    @Override
+    public boolean isFrameRateLimited() {
+        return true;
+    }
+
+    @Override
+    public GraphicsConfiguration getGraphicsConfiguration() {
+        Window window = device.getFullScreenWindow();
+        return (window != null) ? window.getGraphicsConfiguration() : device.getDefaultConfiguration();
+    }
+
+    @Override
+    public void addKeyListener(KeyListener listener) {
+        device.getFullScreenWindow().addKeyListener(listener);
+    }
+
+    /**
+     * @return strategy for the drawing window or null if there is a problem
+     */
+    private BufferStrategy getWindowBufferStrategy() {
+        Window window = device.getFullScreenWindow();
+        if (window != null) {
+            try {
+                return window.getBufferStrategy();
+            }catch (Throwable t){
+                logger.error("Couldn't get graphics from the window",t);
+                return null;
+            }
+        }
+        else {
+            logger.fatal("returning null strategy bcz the window is null");
+            return null;
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        Window window = device.getFullScreenWindow();
+        if (window != null) {
+            return window.getWidth();
+        }
+        else {
+            return 0;
+        }
+    }
+
+    /**
+     Returns the height of the window currently used in full
+     screen mode. Returns 0 if the device is not in full
+     screen mode.
+     */
+    @Override
+    public int getHeight() {
+        Window window = device.getFullScreenWindow();
+        if (window != null) {
+            return window.getHeight();
+        }
+        else {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        Window window = device.getFullScreenWindow();
+        if (window != null) {
+            window.dispose();
+        }
+        device.setFullScreenWindow(null);
+    }
+}
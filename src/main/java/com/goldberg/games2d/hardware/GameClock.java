@@ -0,0 +1,38 @@
+package com.goldberg.games2d.hardware;
+
+/**
+ * The clock the game loop runs by: when the ticks are due, how long to wait for a frame, what the game time starts
+ * at. The real clock follows the wall clock; the others only move when the loop moves them, so a level can be run
+ * at a fixed pace per frame or as fast as the ticks compute, e.g. in a batch validation without drawing.
+ * See {@link ClockMode} for the implementations.
+ * @author antonymouse
+ * @since 0.3
+ */
+public interface GameClock {
+    /**
+     * @return the clock's time, ns; only the differences mean anything, like System.nanoTime()'s
+     */
+    long nanoTime();
+
+    /**
+     * @return the wall time the game time starts at, ms
+     */
+    long currentTimeMillis();
+
+    /**
+     * Returns once {@link #nanoTime()} reached the deadline: the real clock waits for it, the others jump to it
+     * @param deadline the time to wait for, {@link #nanoTime()}
+     */
+    void waitUntil(long deadline);
+
+    /**
+     * Called by the game loop after each frame drawn
+     * @param nextTickAt when the next simulation tick is due, {@link #nanoTime()}
+     */
+    void frameEnded(long nextTickAt);
+
+    /**
+     * @return true if the time passes by itself, false if only the game loop moves it
+     */
+    boolean isRealTime();
+}
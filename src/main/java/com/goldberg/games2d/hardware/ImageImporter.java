@@ -0,0 +1,340 @@
+package com.goldberg.games2d.hardware;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The import stage for all the images the game draws. Whatever ImageIO reads (3-byte BGR for JPGs, paletted PNGs
+ * etc.) is converted into the format of the display, so drawing doesn't go through the slow conversion loops of
+ * Java2D on every blit. Opaque images (tiles) are converted as such, images with an alpha channel get bitmask
+ * transparency if their alpha is all-or-nothing and translucency otherwise.
+ * Remembers everything it imported and converts it again if the display changes.
+ * The game is drawn in logical pixels (the assets' native size), the images are scaled for the screen here, once, so
+ * no blit has to scale. The scale fits the logical resolution into the render target, unless a fixed one is
+ * configured. When the render target's size changes, the images are scaled again on a background thread, the old
+ * ones stay in use until all the new ones are ready. The same happens when the game asks for a lower resolution to
+ * save time, see {@link #setScaleFactor(float)}.
+ * Counts the blits of imported images, split by whether they hit the accelerated path.
+ * @author antonymouse
+ * @since 0.3
+ */
+@Singleton
+public class ImageImporter {
+    private static final Logger logger = LogManager.getLogger();
+    private final RenderTarget renderTarget;
+    private final List<ImportedImage> imported = new ArrayList<>();
+    private volatile GraphicsConfiguration configuration;
+    private boolean configurationKnown = false;
+    private final int logicalWidth, logicalHeight;
+    /**
+     * 0 to fit the logical resolution into the render target
+     */
+    private final float fixedScale;
+    private final ScaleInterpolation interpolation;
+    private volatile float scale = 1;
+    private boolean scaleKnown = false;
+    /**
+     * The share of the fitting scale asked for, and the share the images are scaled at now
+     */
+    private float scaleFactor = 1, appliedScaleFactor = 1;
+    /**
+     * The images scaled in the background, null if no scaling is going on
+     */
+    private Future<Map<ImportedImage, BufferedImage>> rescaling;
+    private float rescalingTo, rescalingFactor;
+    private final ExecutorService rescaler = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "image-rescale");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong acceleratedBlits = new AtomicLong();
+    private final AtomicLong unacceleratedBlits = new AtomicLong();
+
+    /**
+     * @param renderTarget where the images are drawn
+     * @param logicalWidth the width of the view in logical pixels the scale fits into the render target
+     * @param logicalHeight the height of the view in logical pixels the scale fits into the render target
+     * @param fixedScale the scale to use whatever the render target's size, 0 to fit
+     * @param interpolation how the images are scaled, see {@link ScaleInterpolation}
+     */
+    @Inject
+    public ImageImporter(RenderTarget renderTarget, @Named("LOGICAL_WIDTH") String logicalWidth,
+                         @Named("LOGICAL_HEIGHT") String logicalHeight, @Named("RENDER_SCALE") String fixedScale,
+                         @Named("SCALE_INTERPOLATION") String interpolation) {
+        this.renderTarget = renderTarget;
+        this.logicalWidth = Integer.parseInt(logicalWidth.trim());
+        this.logicalHeight = Integer.parseInt(logicalHeight.trim());
+        this.fixedScale = Float.parseFloat(fixedScale.trim());
+        this.interpolation = ScaleInterpolation.valueOf(interpolation.trim());
+    }
+
+    /**
+     * Reads an image file and imports it
+     * @param file the file to read
+     * @param opaque true if the image should be drawn as opaque (tiles), false to keep the transparency (sprites)
+     * @return the imported image
+     * @throws IOException if the file can't be read
+     */
+    public ImportedImage read(@NotNull File file, boolean opaque) throws IOException {
+        BufferedImage source = ImageIO.read(file);
+        if (source == null) {
+            throw new IOException("Unknown image format of " + file);
+        }
+        return importImage(source, opaque);
+    }
+
+    /**
+     * Converts the image into the display's format
+     * @param source the image as it was loaded
+     * @param opaque true if the image should be drawn as opaque (tiles), false to keep the transparency (sprites)
+     * @return the imported image
+     */
+    public synchronized ImportedImage importImage(@NotNull BufferedImage source, boolean opaque) {
+        int transparency = opaque ? Transparency.OPAQUE : detectTransparency(source);
+        ImportedImage result = new ImportedImage(this, source, convert(source, transparency, getScale()),
+                transparency);
+        imported.add(result);
+        return result;
+    }
+
+    /**
+     * Forgets the image, so it isn't converted on display changes and can be garbage collected
+     * @param image the image which won't be drawn anymore
+     */
+    public synchronized void release(@NotNull ImportedImage image) {
+        imported.remove(image);
+    }
+
+    /**
+     * @return the configuration the images are converted for, null if there is no display device
+     */
+    public synchronized GraphicsConfiguration getConfiguration() {
+        if (!configurationKnown) {
+            configuration = renderTarget.getGraphicsConfiguration();
+            configurationKnown = true;
+        }
+        return configuration;
+    }
+
+    /**
+     * @return how many screen pixels a logical pixel takes
+     */
+    public synchronized float getScale() {
+        if (!scaleKnown) {
+            scale = targetScale();
+            appliedScaleFactor = scaleFactor;
+            scaleKnown = true;
+            logger.info("drawing at scale {}", scale);
+        }
+        return scale;
+    }
+
+    /**
+     * Asks for the images at a share of the scale fitting the render target, e.g. to draw the frames at a lower
+     * resolution and scale them up to the screen. The images are scaled again in the background, see
+     * {@link #getAppliedScaleFactor()} for when they are ready.
+     * @param factor the share, up to 1
+     */
+    public synchronized void setScaleFactor(float factor) {
+        scaleFactor = Math.min(1, factor);
+    }
+
+    /**
+     * @return the share of the fitting scale the images are scaled at now, see {@link #setScaleFactor(float)}
+     */
+    public synchronized float getAppliedScaleFactor() {
+        return appliedScaleFactor;
+    }
+
+    /**
+     * @return the scale the images are converted for now, without working it out if it isn't known yet
+     */
+    float currentScale() {
+        return scale;
+    }
+
+    /**
+     * @return the scale for the render target's current size
+     */
+    private float targetScale() {
+        if (fixedScale > 0) {
+            return fixedScale * scaleFactor;
+        }
+        int width = renderTarget.getWidth();
+        int height = renderTarget.getHeight();
+        if (width <= 0 || height <= 0) {
+            return scaleFactor;
+        }
+        return Math.min((float) width / logicalWidth, (float) height / logicalHeight) * scaleFactor;
+    }
+
+    /**
+     * Checks if the render target moved to a different display configuration and converts all the imported images
+     * again if it did. Also checks if the render target's size asks for another scale, and if so scales the images
+     * in the background. Meant to be called by the game loop, before drawing a frame.
+     * @return true if the configuration changed or the images scaled in the background replaced the old ones
+     */
+    public synchronized boolean updateConfiguration() {
+        GraphicsConfiguration current = renderTarget.getGraphicsConfiguration();
+        if (!configurationKnown || current == configuration ||
+                (current != null && current.equals(configuration))) {
+            configuration = current;
+            configurationKnown = true;
+            return updateScale();
+        }
+        logger.info("display configuration changed, converting {} images", imported.size());
+        configuration = current;
+        if (rescaling != null) {
+            // it's converting for the old configuration
+            rescaling.cancel(true);
+            rescaling = null;
+        }
+        scale = targetScale();
+        appliedScaleFactor = scaleFactor;
+        scaleKnown = true;
+        imported.forEach(ImportedImage::reconvert);
+        return true;
+    }
+
+    private boolean updateScale() {
+        if (!scaleKnown) {
+            return false;
+        }
+        if (rescaling == null) {
+            float wanted = targetScale();
+            if (wanted != scale) {
+                logger.info("scale changed from {} to {}, scaling {} images in the background", scale, wanted,
+                        imported.size());
+                List<ImportedImage> toScale = new ArrayList<>(imported);
+                rescalingTo = wanted;
+                rescalingFactor = scaleFactor;
+                rescaling = rescaler.submit(() -> {
+                    Map<ImportedImage, BufferedImage> scaled = new IdentityHashMap<>();
+                    for (ImportedImage image : toScale) {
+                        scaled.put(image, convert(image.getSource(), image.getTransparency(), wanted));
+                    }
+                    return scaled;
+                });
+            }
+            return false;
+        }
+        if (!rescaling.isDone()) {
+            return false;
+        }
+        Map<ImportedImage, BufferedImage> scaled;
+        try {
+            scaled = rescaling.get();
+        } catch (InterruptedException | ExecutionException | CancellationException e) {
+            logger.error("scaling the images failed, staying at scale {}", scale, e);
+            rescaling = null;
+            return false;
+        }
+        rescaling = null;
+        scale = rescalingTo;
+        appliedScaleFactor = rescalingFactor;
+        for (ImportedImage image : imported) {
+            BufferedImage replacement = scaled.get(image);
+            if (replacement != null) {
+                image.replace(replacement);
+            } else {
+                // imported while the scaling was going on
+                image.reconvert();
+            }
+        }
+        logger.info("now drawing at scale {}", scale);
+        return true;
+    }
+
+    /**
+     * @return how many blits of imported images were accelerated
+     */
+    public long getAcceleratedBlits() {
+        return acceleratedBlits.get();
+    }
+
+    /**
+     * @return how many blits of imported images went through the software loops
+     */
+    public long getUnacceleratedBlits() {
+        return unacceleratedBlits.get();
+    }
+
+    /**
+     * @param source the image as it was loaded
+     * @param transparency one of {@link Transparency} constants
+     * @param scale how many screen pixels a pixel of the source takes
+     * @return the image in the display's format, scaled
+     */
+    BufferedImage convert(BufferedImage source, int transparency, float scale) {
+        GraphicsConfiguration target = getConfiguration();
+        // rounded up, so neighbouring images overlap rather than leave a gap
+        int width = (int) Math.ceil(source.getWidth() * scale);
+        int height = (int) Math.ceil(source.getHeight() * scale);
+        BufferedImage result = (target != null) ? target.createCompatibleImage(width, height, transparency) :
+                new BufferedImage(width, height, (transparency == Transparency.OPAQUE) ?
+                        BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = result.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Src);
+            if (width == source.getWidth() && height == source.getHeight()) {
+                g.drawImage(source, 0, 0, null);
+            } else {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation.getHint());
+                g.drawImage(source, 0, 0, width, height, null);
+            }
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    void countBlit(BufferedImage image) {
+        GraphicsConfiguration target = configuration;
+        if (target != null && image.getCapabilities(target).isAccelerated()) {
+            acceleratedBlits.incrementAndGet();
+        } else {
+            unacceleratedBlits.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return BITMASK if every pixel is either fully transparent or fully opaque, TRANSLUCENT if some are neither,
+     * OPAQUE if there is no alpha at all
+     */
+    private static int detectTransparency(BufferedImage source) {
+        if (!source.getColorModel().hasAlpha()) {
+            return Transparency.OPAQUE;
+        }
+        if (source.getTransparency() == Transparency.BITMASK) {
+            return Transparency.BITMASK;
+        }
+        int width = source.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < source.getHeight(); y++) {
+            source.getRGB(0, y, width, 1, row, 0, width);
+            for (int argb : row) {
+                int alpha = argb >>> 24;
+                if (alpha != 0 && alpha != 0xff) {
+                    return Transparency.TRANSLUCENT;
+                }
+            }
+        }
+        return Transparency.BITMASK;
+    }
+}
@@ -0,0 +1,108 @@
+package com.goldberg.games2d.hardware;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * An image converted by {@link ImageImporter} into the format of the display it is drawn on, and scaled for it. The
+ * importer can replace the converted image when the display changes, so hold on to this handle rather than to the
+ * image itself. Keeps the image as it was loaded, to convert it again from.
+ * Sizes and coordinates are in logical pixels, the drawing scales them to the screen.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class ImportedImage {
+    private final ImageImporter importer;
+    private final int transparency;
+    private final BufferedImage source;
+    private volatile BufferedImage image;
+
+    ImportedImage(ImageImporter importer, BufferedImage source, BufferedImage image, int transparency) {
+        this.importer = importer;
+        this.source = source;
+        this.image = image;
+        this.transparency = transparency;
+    }
+
+    /**
+     * @return the image as it was loaded, in logical pixels
+     */
+    public BufferedImage getSource() {
+        return source;
+    }
+
+    /**
+     * @return the image in the current display format and scale
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * @return one of {@link Transparency} constants, the transparency the image was converted with
+     */
+    public int getTransparency() {
+        return transparency;
+    }
+
+    public int getWidth() {
+        return source.getWidth();
+    }
+
+    public int getHeight() {
+        return source.getHeight();
+    }
+
+    /**
+     * Draws the image and counts the blit
+     * @param g the graphics to use
+     * @param x logical x to place the image
+     * @param y logical y to place the image
+     */
+    public void draw(@NotNull Graphics2D g, int x, int y) {
+        BufferedImage current = image;
+        float scale = importer.currentScale();
+        g.drawImage(current, Math.round(x * scale), Math.round(y * scale), null);
+        importer.countBlit(current);
+    }
+
+    /**
+     * Draws a part of the image and counts the blit
+     * @param g the graphics to use
+     * @param x logical x to place the part
+     * @param y logical y to place the part
+     * @param sourceX left side of the part within the image, logical
+     * @param sourceY top side of the part within the image, logical
+     * @param width logical width of the part
+     * @param height logical height of the part
+     */
+    public void draw(@NotNull Graphics2D g, int x, int y, int sourceX, int sourceY, int width, int height) {
+        BufferedImage current = image;
+        float scale = importer.currentScale();
+        int left = Math.round(x * scale);
+        int top = Math.round(y * scale);
+        int partLeft = Math.round(sourceX * scale);
+        int partTop = Math.round(sourceY * scale);
+        int partWidth = Math.round((sourceX + width) * scale) - partLeft;
+        int partHeight = Math.round((sourceY + height) * scale) - partTop;
+        g.drawImage(current, left, top, left + partWidth, top + partHeight, partLeft, partTop,
+                partLeft + partWidth, partTop + partHeight, null);
+        importer.countBlit(current);
+    }
+
+    /**
+     * Converts the image again, for the current display and scale
+     */
+    void reconvert() {
+        image = importer.convert(source, transparency, importer.getScale());
+    }
+
+    /**
+     * @param converted the image converted for the current display and scale
+     */
+    void replace(BufferedImage converted) {
+        image = converted;
+    }
+}
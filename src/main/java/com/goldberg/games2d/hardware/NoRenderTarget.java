@@ -0,0 +1,79 @@
+package com.goldberg.games2d.hardware;
+
+import java.awt.*;
+import java.awt.event.KeyListener;
+
+/**
+ * Nowhere to draw: the game loop only simulates, e.g. in a batch validation of a level. With a clock other than
+ * the real one the level runs as fast as the ticks compute.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class NoRenderTarget implements RenderTarget {
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return false, there is nowhere to draw
+     */
+    @Override
+    public boolean startFrame() {
+        return false;
+    }
+
+    @Override
+    public Graphics2D getDrawGraphics() {
+        throw new UnsupportedOperationException("There is nowhere to draw");
+    }
+
+    @Override
+    public boolean contentsRestored() {
+        return false;
+    }
+
+    @Override
+    public boolean contentsLost() {
+        return false;
+    }
+
+    @Override
+    public void show() {
+    }
+
+    @Override
+    public int getWidth() {
+        return 0;
+    }
+
+    @Override
+    public int getHeight() {
+        return 0;
+    }
+
+    @Override
+    public GraphicsConfiguration getGraphicsConfiguration() {
+        return null;
+    }
+
+    @Override
+    public int getBufferHistoryDepth() {
+        return 0;
+    }
+
+    @Override
+    public boolean isFrameRateLimited() {
+        return false;
+    }
+
+    /**
+     * No keyboard, the simulation runs on its own
+     */
+    @Override
+    public void addKeyListener(KeyListener listener) {
+    }
+}
@@ -0,0 +1,118 @@
+package com.goldberg.games2d.hardware;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.awt.*;
+import java.awt.event.KeyListener;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws into an image in memory. Needs no display, so it works with java.awt.headless=true, and doesn't limit the
+ * frame rate. Used to run and profile the game on build machines and to check the rendered frames.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class OffscreenRenderTarget implements RenderTarget {
+    private static final Logger logger = LogManager.getLogger();
+    private final int width, height;
+    private BufferedImage frame;
+
+    /**
+     * @param width width of the frames in pixels
+     * @param height height of the frames in pixels
+     */
+    public OffscreenRenderTarget(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public void open() {
+        frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        logger.debug("rendering offscreen into {}x{} image", width, height);
+    }
+
+    @Override
+    public void close() {
+        frame = null;
+    }
+
+    @Override
+    public boolean startFrame() {
+        return frame != null;
+    }
+
+    @Override
+    public Graphics2D getDrawGraphics() {
+        return frame.createGraphics();
+    }
+
+    /**
+     * An image in memory doesn't lose its content
+     */
+    @Override
+    public boolean contentsRestored() {
+        return false;
+    }
+
+    /**
+     * An image in memory doesn't lose its content
+     */
+    @Override
+    public boolean contentsLost() {
+        return false;
+    }
+
+    /**
+     * Nothing to show, the frame stays in {@link #getFrame()} until the next one is drawn over it
+     */
+    @Override
+    public void show() {
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return null, the images are kept in the system memory
+     */
+    @Override
+    public GraphicsConfiguration getGraphicsConfiguration() {
+        return null;
+    }
+
+    /**
+     * @return 1, there is just one buffer and it keeps the last frame
+     */
+    @Override
+    public int getBufferHistoryDepth() {
+        return 1;
+    }
+
+    @Override
+    public boolean isFrameRateLimited() {
+        return false;
+    }
+
+    /**
+     * There is no keyboard
+     */
+    @Override
+    public void addKeyListener(KeyListener listener) {
+    }
+
+    /**
+     * @return the image with the last drawn frame
+     */
+    public BufferedImage getFrame() {
+        return frame;
+    }
+}
@@ -0,0 +1,69 @@
+package com.goldberg.games2d.hardware;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The wall clock, System.nanoTime(). The wait for a deadline is a hybrid: the thread sleeps while the deadline is
+ * far, yields once it's within the timer's oversleep, and spins the last fraction of a millisecond, so it wakes
+ * within microseconds of the deadline whatever the OS timer granularity. The oversleep is learned from the sleeps
+ * themselves; the threads waiting on the same clock share what they learned.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class RealTimeClock implements GameClock {
+    /**
+     * The wait spins when the deadline is that close, ns
+     */
+    private static final long SPIN_THRESHOLD = 200_000;
+    /**
+     * The oversleep assumed before any sleep was measured, ns
+     */
+    private static final long INITIAL_SLEEP_MARGIN = 2_000_000;
+    private volatile long sleepMargin = INITIAL_SLEEP_MARGIN;
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void waitUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        while (remaining > sleepMargin + SPIN_THRESHOLD) {
+            long margin = sleepMargin;
+            long sleep = remaining - margin - SPIN_THRESHOLD;
+            long sleepStarted = System.nanoTime();
+            LockSupport.parkNanos(sleep);
+            long now = System.nanoTime();
+            // follow the timer: grow the margin at once to the worst oversleep, shrink it slowly
+            long oversleep = now - sleepStarted - sleep;
+            sleepMargin = Math.max(oversleep, margin - (margin >> 4));
+            remaining = deadline - now;
+        }
+        while (remaining > SPIN_THRESHOLD) {
+            Thread.yield();
+            remaining = deadline - System.nanoTime();
+        }
+        while (remaining > 0) {
+            Thread.onSpinWait();
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * The time passes by itself, nothing to do
+     */
+    @Override
+    public void frameEnded(long nextTickAt) {
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return true;
+    }
+}
@@ -0,0 +1,21 @@
+package com.goldberg.games2d.hardware;
+
+/**
+ * Available implementations of {@link RenderTarget}
+ * @author antonymouse
+ * @since 0.3
+ */
+public enum RenderBackend {
+    /**
+     * {@link FullScreenRenderTarget}, the default screen in full screen mode
+     */
+    FULLSCREEN,
+    /**
+     * {@link OffscreenRenderTarget}, an image in memory, works without a display
+     */
+    OFFSCREEN,
+    /**
+     * {@link NoRenderTarget}, no drawing at all, the game only simulates
+     */
+    NONE
+}
@@ -0,0 +1,83 @@
+package com.goldberg.games2d.hardware;
+
+import java.awt.*;
+import java.awt.event.KeyListener;
+
+/**
+ * Something the game can draw its frames on: a full screen window, an image in memory etc. The game loop uses it
+ * the same way it would use a {@link java.awt.image.BufferStrategy}:
+ * {@link #startFrame()}, then {@link #getDrawGraphics()} and paint while {@link #contentsRestored()}, then
+ * {@link #show()} unless {@link #contentsLost()}.
+ * The implementations don't have to be thread-safe, they are used by the game loop only.
+ * @author antonymouse
+ * @since 0.3
+ */
+public interface RenderTarget {
+    /**
+     * Creates whatever is needed for drawing. Called once, before any other method.
+     */
+    void open();
+
+    /**
+     * Releases the resources, restores the screen if needed
+     */
+    void close();
+
+    /**
+     * Prepares the target for the next frame
+     * @return false if there is nowhere to draw this frame
+     */
+    boolean startFrame();
+
+    /**
+     * @return graphics to draw the current frame with, the caller disposes of it
+     */
+    Graphics2D getDrawGraphics();
+
+    /**
+     * @return true if the drawing buffer was lost and restored while we painted, so the frame needs repainting
+     */
+    boolean contentsRestored();
+
+    /**
+     * @return true if the drawing buffer was lost and the frame can't be shown
+     */
+    boolean contentsLost();
+
+    /**
+     * Makes the painted frame visible
+     */
+    void show();
+
+    /**
+     * @return width of the drawing area in pixels, 0 if there is none
+     */
+    int getWidth();
+
+    /**
+     * @return height of the drawing area in pixels, 0 if there is none
+     */
+    int getHeight();
+
+    /**
+     * @return configuration of the device the frames go to, null if the target isn't backed by a display device
+     */
+    GraphicsConfiguration getGraphicsConfiguration();
+
+    /**
+     * @return how many frames ago the buffer returned by {@link #getDrawGraphics()} was painted last time, 0 if the
+     * target doesn't keep the buffers' contents between frames
+     */
+    int getBufferHistoryDepth();
+
+    /**
+     * @return false if the game loop can render as fast as it can, true if there is a display to keep pace with
+     */
+    boolean isFrameRateLimited();
+
+    /**
+     * Connects a source of keyboard events if the target has any
+     * @param listener the listener to register
+     */
+    void addKeyListener(KeyListener listener);
+}
@@ -0,0 +1,30 @@
+package com.goldberg.games2d.hardware;
+
+import java.awt.*;
+
+/**
+ * How the images are scaled for the screen, see {@link ImageImporter}
+ * @author antonymouse
+ * @since 0.3
+ */
+public enum ScaleInterpolation {
+    /**
+     * Sharp pixels, the way for pixel art
+     */
+    NEAREST(RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR),
+    BILINEAR(RenderingHints.VALUE_INTERPOLATION_BILINEAR),
+    BICUBIC(RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+
+    private final Object hint;
+
+    ScaleInterpolation(Object hint) {
+        this.hint = hint;
+    }
+
+    /**
+     * @return the value for {@link RenderingHints#KEY_INTERPOLATION}
+     */
+    public Object getHint() {
+        return hint;
+    }
+}
@@ -0,0 +1,60 @@
+package com.goldberg.games2d.hardware;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock which stands still except for the game loop: every frame drawn advances it by a fixed step, and a wait
+ * jumps it to the deadline at once. The game shows the same frames whatever the machine, e.g. to capture a
+ * recording at an even pace however long each frame took to draw, or to run a level faster than real time when
+ * the frames are quick. The game time starts at a fixed epoch, so the runs repeat.
+ * @author antonymouse
+ * @since 0.3
+ */
+public class VirtualClock implements GameClock {
+    /**
+     * The game time the clock starts at, ms
+     */
+    static final long EPOCH = 0;
+    private final long stepNanos;
+    private final AtomicLong now = new AtomicLong();
+
+    /**
+     * @param stepNanos the game time a frame takes, ns
+     */
+    public VirtualClock(long stepNanos) {
+        this.stepNanos = Math.max(1, stepNanos);
+    }
+
+    /**
+     * @param frameRate the frames per second of game time
+     * @return the clock for the rate
+     */
+    public static VirtualClock forFrameRate(int frameRate) {
+        return new VirtualClock(1_000_000_000L / Math.max(1, frameRate));
+    }
+
+    @Override
+    public long nanoTime() {
+        return now.get();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return EPOCH;
+    }
+
+    @Override
+    public void waitUntil(long deadline) {
+        now.accumulateAndGet(deadline, Math::max);
+    }
+
+    @Override
+    public void frameEnded(long nextTickAt) {
+        now.addAndGet(stepNanos);
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return false;
+    }
+}